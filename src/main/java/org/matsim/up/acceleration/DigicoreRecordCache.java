@@ -0,0 +1,418 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
+
+/**
+ * Columnar binary copy of the parsed values of a raw Digicore accelerometer
+ * file, so that grids can be built repeatedly (at different scales or risk
+ * thresholds) without parsing text every time. The cache is written once,
+ * next to the source file, and is rebuilt automatically when the source
+ * file (its size or modification time) or the header option change. The
+ * cached (source) columns are part of the cache's filename, so grids that 
+ * cache different columns of the same source each keep their own cache. A
+ * cache is built in temporary files and only moved into place once it is
+ * complete, so a concurrent reader, or a crash, never sees a partial cache.
+ *
+ * <p>The file has a 64-byte header, followed by each of the columns in
+ * turn: the x, y and z-accelerations and the speed as little-endian
+ * doubles, and the event as little-endian integers. A column that is not
+ * in the source data (its source column is -1) takes up no space. The
+ * columns are memory mapped when read.</p>
+ *
+ * @author jwjoubert
+ */
+public class DigicoreRecordCache {
+	final private static Logger LOG = Logger.getLogger(DigicoreRecordCache.class);
+	final private static int MAGIC = 0x44474343;
+	final private static int VERSION = 1;
+	final private static int HEADER_SIZE = 64;
+	final private static int BLOCK_SIZE = 1 << 24;
+	final private static int WRITE_BUFFER_SIZE = 1 << 16;
+	/** The extension of the cache filename, see {@link #getCacheFilename(String, int...)}. */
+	public final static String EXTENSION = ".cache";
+
+	/** The columns that are cached. */
+	public enum Column{
+		X(8), Y(8), Z(8), SPEED(8), EVENT(4);
+
+		private final int width;
+
+		private Column(int width) {
+			this.width = width;
+		}
+	}
+
+	private final String filename;
+	private final int[] sourceColumns;
+	private final long size;
+	private final long[] offsets = new long[Column.values().length];
+
+
+	private DigicoreRecordCache(String filename, int[] sourceColumns, long size) {
+		this.filename = filename;
+		this.sourceColumns = sourceColumns;
+		this.size = size;
+		long offset = HEADER_SIZE;
+		for(Column column : Column.values()){
+			offsets[column.ordinal()] = offset;
+			if(sourceColumns[column.ordinal()] >= 0){
+				offset += size*column.width;
+			}
+		}
+	}
+
+
+	/**
+	 * Opens the cache of the given source file, using the default columns of
+	 * the Digicore records: x, y, z and speed in columns 5 to 8, and the
+	 * event in column 2.
+	 *
+	 * @see #getCache(String, boolean, int, int, int, int, int)
+	 */
+	public static DigicoreRecordCache getCache(String source, boolean hasHeader){
+		return getCache(source, hasHeader, 5, 6, 7, 8, 2);
+	}
+
+
+	/**
+	 * Opens the cache of the given source file, first (re)building it if it
+	 * does not exist or is out of date.
+	 *
+	 * @param source the raw accelerometer file, possibly compressed.
+	 * @param hasHeader true if the first line of the source is a header.
+	 * @param xColumn the source column of each cached column, or -1 if the
+	 * 		  source does not have that column.
+	 */
+	public static DigicoreRecordCache getCache(String source, boolean hasHeader,
+			int xColumn, int yColumn, int zColumn, int speedColumn, int eventColumn){
+		int[] sourceColumns = {xColumn, yColumn, zColumn, speedColumn, eventColumn};
+		String filename = getCacheFilename(source, sourceColumns);
+		DigicoreRecordCache cache = open(filename, new File(source), hasHeader, sourceColumns);
+		if(cache == null){
+			cache = build(source, filename, hasHeader, sourceColumns);
+		}
+		return cache;
+	}
+
+
+	/**
+	 * @param sourceColumns the source column of each cached column, in the
+	 * 		  order of {@link Column}, or -1 if the source does not have it.
+	 * @return the source filename, followed by the cached source columns, 
+	 * 		   e.g. <code>records.csv.5_6_7_8_2.cache</code>, with <code>n</code>
+	 * 		   for a column that is not in the source.
+	 */
+	public static String getCacheFilename(String source, int... sourceColumns){
+		StringBuilder sb = new StringBuilder(source);
+		for(int i = 0; i < sourceColumns.length; i++){
+			sb.append(i == 0 ? "." : "_");
+			sb.append(sourceColumns[i] >= 0 ? String.valueOf(sourceColumns[i]) : "n");
+		}
+		return sb.append(EXTENSION).toString();
+	}
+
+
+	/**
+	 * @return the cache, or null if the cache does not exist or does not
+	 * 		   match the source file and options.
+	 */
+	private static DigicoreRecordCache open(String filename, File source, boolean hasHeader, int[] sourceColumns){
+		File file = new File(filename);
+		if(!file.exists() || file.length() < HEADER_SIZE){
+			return null;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			while(header.hasRemaining() && channel.read(header) >= 0){ }
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		}
+		header.flip();
+		if(header.getInt() != MAGIC || header.getInt() != VERSION){
+			LOG.warn("Cache " + filename + " is not a record cache, or of an old version. Rebuilding it.");
+			return null;
+		}
+		long size = header.getLong();
+		if(header.getLong() != source.length()
+				|| header.getLong() != source.lastModified()
+				|| (header.get() == 1) != hasHeader){
+			LOG.info("Source " + source.getPath() + " has changed since it was cached. Rebuilding the cache.");
+			return null;
+		}
+		for(int column : sourceColumns){
+			if(header.getInt() != column){
+				LOG.info("Cache " + filename + " has different columns. Rebuilding the cache.");
+				return null;
+			}
+		}
+		DigicoreRecordCache cache = new DigicoreRecordCache(filename, sourceColumns, size);
+		if(file.length() != cache.offsets[Column.EVENT.ordinal()] + (sourceColumns[Column.EVENT.ordinal()] >= 0 ? 4*size : 0)){
+			LOG.warn("Cache " + filename + " is incomplete. Rebuilding it.");
+			return null;
+		}
+		return cache;
+	}
+
+
+	private static DigicoreRecordCache build(String source, String filename, boolean hasHeader, int[] sourceColumns){
+		LOG.info("Caching the records of " + source + " in " + filename + "...");
+		File sourceFile = new File(source);
+		long sourceLength = sourceFile.length();
+		long sourceModified = sourceFile.lastModified();
+
+		/* Parse the available columns, each into its own temporary file. */
+		Column[] columns = Column.values();
+		int numberOfColumns = 0;
+		for(int sourceColumn : sourceColumns){
+			if(sourceColumn >= 0){
+				numberOfColumns++;
+			}
+		}
+		int[] readerColumns = new int[numberOfColumns];
+		final Column[] cachedColumns = new Column[numberOfColumns];
+		for(int i = 0, j = 0; i < columns.length; i++){
+			if(sourceColumns[i] >= 0){
+				readerColumns[j] = sourceColumns[i];
+				cachedColumns[j++] = columns[i];
+			}
+		}
+		DigicoreRecordReader reader = new DigicoreRecordReader(readerColumns);
+		reader.setHasHeader(hasHeader);
+
+		final Path[] columnFiles = new Path[numberOfColumns];
+		final FileChannel[] channels = new FileChannel[numberOfColumns];
+		final ByteBuffer[] buffers = new ByteBuffer[numberOfColumns];
+		final Counter counter = new Counter("   records # ");
+		Path target = Paths.get(filename).toAbsolutePath();
+		Path temporary = null;
+		long size;
+		try{
+			/* Unique temporary files, so concurrent builds do not clash. */
+			temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+			for(int i = 0; i < numberOfColumns; i++){
+				columnFiles[i] = Files.createTempFile(target.getParent(), 
+						target.getFileName() + "." + cachedColumns[i].name().toLowerCase(), ".tmp");
+				channels[i] = FileChannel.open(columnFiles[i], StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+				buffers[i] = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			}
+			size = reader.read(source, new RecordHandler() {
+				@Override
+				public void handleRecord(double[] values) {
+					try{
+						for(int i = 0; i < values.length; i++){
+							ByteBuffer buffer = buffers[i];
+							if(buffer.remaining() < 8){
+								flush(buffer, channels[i]);
+							}
+							if(cachedColumns[i] == Column.EVENT){
+								buffer.putInt((int) values[i]);
+							} else{
+								buffer.putDouble(values[i]);
+							}
+						}
+					} catch (IOException e){
+						e.printStackTrace();
+						throw new RuntimeException("Cannot write the cache of " + source);
+					}
+					counter.incCounter();
+				}
+			});
+			for(int i = 0; i < numberOfColumns; i++){
+				flush(buffers[i], channels[i]);
+				channels[i].close();
+			}
+			counter.printCounter();
+
+			/* Write the header, followed by the columns in order. */
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putLong(size);
+			header.putLong(sourceLength).putLong(sourceModified).put((byte) (hasHeader ? 1 : 0));
+			for(int column : sourceColumns){
+				header.putInt(column);
+			}
+			header.rewind();
+			try(FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+				while(header.hasRemaining()){
+					out.write(header);
+				}
+				for(int i = 0; i < numberOfColumns; i++){
+					try(FileChannel in = FileChannel.open(columnFiles[i], StandardOpenOption.READ)){
+						long position = 0;
+						long length = in.size();
+						while(position < length){
+							position += in.transferTo(position, length - position, out);
+						}
+					}
+				}
+			}
+			try{
+				Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+			} catch(AtomicMoveNotSupportedException e){
+				Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot write to " + filename);
+		} finally{
+			for(int i = 0; i < numberOfColumns; i++){
+				try {
+					if(channels[i] != null){
+						channels[i].close();
+					}
+					if(columnFiles[i] != null){
+						Files.deleteIfExists(columnFiles[i]);
+					}
+				} catch (IOException e) {
+					e.printStackTrace();
+					throw new RuntimeException("Cannot close " + columnFiles[i]);
+				}
+			}
+			try {
+				if(temporary != null){
+					Files.deleteIfExists(temporary);
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Cannot remove " + temporary);
+			}
+		}
+		LOG.info("Done caching " + size + " records.");
+		return new DigicoreRecordCache(filename, sourceColumns, size);
+	}
+
+
+	private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+
+	public String getFilename(){
+		return this.filename;
+	}
+
+
+	/**
+	 * @return the number of cached records.
+	 */
+	public long size(){
+		return this.size;
+	}
+
+
+	/**
+	 * @return the cached column holding the given source column, or null if
+	 * 		   that source column is not cached.
+	 */
+	public Column getColumn(int sourceColumn){
+		if(sourceColumn < 0){
+			return null;
+		}
+		for(Column column : Column.values()){
+			if(sourceColumns[column.ordinal()] == sourceColumn){
+				return column;
+			}
+		}
+		return null;
+	}
+
+
+	/**
+	 * Passes the values of the given columns of every record to the handler.
+	 *
+	 * @return the number of records read.
+	 */
+	public long read(RecordHandler handler, Column... columns){
+		return read(0, size, handler, columns);
+	}
+
+
+	/**
+	 * Passes the values of the given columns of the records in the range
+	 * [from, to) to the handler, in the order of the columns given. Different
+	 * ranges can be read concurrently.
+	 *
+	 * @return the number of records read.
+	 */
+	public long read(long from, long to, RecordHandler handler, Column... columns){
+		for(Column column : columns){
+			if(sourceColumns[column.ordinal()] < 0){
+				throw new IllegalArgumentException("Column " + column + " is not cached in " + filename);
+			}
+		}
+		if(from < 0 || to > size || from > to){
+			throw new IndexOutOfBoundsException("Cannot read records " + from + " to " + to + " of " + size);
+		}
+		double[] values = new double[columns.length];
+		DoubleBuffer[] doubles = new DoubleBuffer[columns.length];
+		IntBuffer[] ints = new IntBuffer[columns.length];
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+			for(long block = from; block < to; block += BLOCK_SIZE){
+				int n = (int) Math.min(BLOCK_SIZE, to - block);
+				for(int i = 0; i < columns.length; i++){
+					int width = columns[i].width;
+					ByteBuffer buffer = channel.map(MapMode.READ_ONLY,
+							offsets[columns[i].ordinal()] + block*width, (long) n*width).order(ByteOrder.LITTLE_ENDIAN);
+					if(columns[i] == Column.EVENT){
+						ints[i] = buffer.asIntBuffer();
+					} else{
+						doubles[i] = buffer.asDoubleBuffer();
+					}
+				}
+				for(int record = 0; record < n; record++){
+					for(int i = 0; i < columns.length; i++){
+						values[i] = doubles[i] != null ? doubles[i].get(record) : ints[i].get(record);
+					}
+					handler.handleRecord(values);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		}
+		return to - from;
+	}
+
+}
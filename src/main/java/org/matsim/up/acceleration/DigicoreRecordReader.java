@@ -0,0 +1,408 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Reads comma-separated Digicore accelerometer records, decoding only the
+ * configured columns straight into primitive doubles. Uncompressed files are
+ * memory mapped and the bytes of each record are parsed in place, so no
+ * {@link String}, substring or array is created per record. Compressed
+ * files are read line by line, but only the configured columns are parsed.
+ *
+ * <p>The values of the columns are passed to a {@link RecordHandler} in the
+ * order in which the columns were given to the constructor. The same value
+ * array is reused for every record, so a handler must copy what it wants to
+ * keep. A reader is not changed by reading, so the same reader may be used
+ * by different threads at the same time, for example for different byte
+ * ranges of the same file.</p>
+ *
+ * @author jwjoubert
+ */
+public class DigicoreRecordReader {
+	/* Mapped windows are kept well below the 2GB limit of a single map. */
+	private final static int MAX_WINDOW = 1 << 28;
+	private final static long MAX_EXACT_MANTISSA = 1L << 53;
+	private final static double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private final int[] columns;
+	/* The position in the value array of each column, or -1 if not parsed. */
+	private final int[] slots;
+	private boolean hasHeader = false;
+
+	/**
+	 * @param columns the (zero-based) indices of the columns to parse, in the
+	 * 		  order in which their values should be handed on.
+	 */
+	public DigicoreRecordReader(int... columns) {
+		if(columns.length == 0){
+			throw new IllegalArgumentException("Need at least one column to read.");
+		}
+		this.columns = columns.clone();
+		int max = 0;
+		for(int column : columns){
+			if(column < 0){
+				throw new IllegalArgumentException("Cannot read column " + column);
+			}
+			max = Math.max(max, column);
+		}
+		this.slots = new int[max + 1];
+		Arrays.fill(this.slots, -1);
+		for(int i = 0; i < columns.length; i++){
+			if(this.slots[columns[i]] >= 0){
+				throw new IllegalArgumentException("Column " + columns[i] + " given more than once.");
+			}
+			this.slots[columns[i]] = i;
+		}
+	}
+
+
+	/**
+	 * Indicates if the first line of a file is a header that must be
+	 * skipped. The default is that there is <i><b>no header</b></i>.
+	 */
+	public void setHasHeader(boolean hasHeader){
+		this.hasHeader = hasHeader;
+	}
+
+
+	public boolean hasHeader(){
+		return this.hasHeader;
+	}
+
+
+	public int getNumberOfColumns(){
+		return this.columns.length;
+	}
+
+
+	/**
+	 * Reads all the records in the file. Uncompressed files are memory
+	 * mapped, while compressed (<code>.gz</code>) files are read through
+	 * {@link IOUtils#getBufferedReader(String)}.
+	 *
+	 * @return the number of records read.
+	 */
+	public long read(String filename, RecordHandler handler){
+		if(filename.endsWith(".gz")){
+			return readStream(filename, handler);
+		}
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+			return read(channel, 0, channel.size(), handler);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		}
+	}
+
+
+	/**
+	 * Reads the records of an uncompressed file that start in the given byte
+	 * range. The range must start at the beginning of a line, and should end
+	 * at the beginning of a line (or the end of the file). The header, if
+	 * any, is only skipped if the range starts at zero.
+	 *
+	 * @return the number of records read.
+	 */
+	public long read(String filename, long start, long end, RecordHandler handler){
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+			return read(channel, start, Math.min(end, channel.size()), handler);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		}
+	}
+
+
+	private long read(FileChannel channel, long start, long end, RecordHandler handler) throws IOException{
+		double[] values = new double[columns.length];
+		ByteSequence line = new ByteSequence();
+		boolean skip = hasHeader && start == 0;
+		long records = 0;
+		long position = start;
+		while(position < end){
+			long length = Math.min(end - position, MAX_WINDOW);
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, position, length);
+			int lineStart = 0;
+			for(int i = 0; i < length; i++){
+				if(buffer.get(i) == '\n'){
+					if(skip){
+						skip = false;
+					} else if(line.set(buffer, lineStart, i)){
+						parse(line, values);
+						handler.handleRecord(values);
+						records++;
+					}
+					lineStart = i + 1;
+				}
+			}
+
+			if(position + length == end){
+				/* The last line need not end with a line break. */
+				if(lineStart < length && !skip && line.set(buffer, lineStart, (int) length)){
+					parse(line, values);
+					handler.handleRecord(values);
+					records++;
+				}
+				position = end;
+			} else if(lineStart == 0){
+				throw new IOException("Line at byte " + position + " is longer than " + MAX_WINDOW + " bytes.");
+			} else{
+				/* Map the incomplete last line again with the next window. */
+				position += lineStart;
+			}
+		}
+		return records;
+	}
+
+
+	private long readStream(String filename, RecordHandler handler){
+		double[] values = new double[columns.length];
+		long records = 0;
+		BufferedReader br = IOUtils.getBufferedReader(filename);
+		try{
+			String line = null;
+			if(hasHeader){
+				line = br.readLine();
+			}
+			while( (line = br.readLine()) != null){
+				if(!line.isEmpty()){
+					parse(line, values);
+					handler.handleRecord(values);
+					records++;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		} finally{
+			try {
+				br.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Cannot close " + filename);
+			}
+		}
+		return records;
+	}
+
+
+	/**
+	 * Parses the configured columns of a single record.
+	 *
+	 * @param record the comma-separated record, without its line break.
+	 * @param values the array, with at least {@link #getNumberOfColumns()}
+	 * 		  elements, into which the column values are written.
+	 * @throws IllegalArgumentException if the record has too few columns.
+	 * @throws NumberFormatException if a column is not a number.
+	 */
+	public void parse(CharSequence record, double[] values){
+		int length = record.length();
+		int field = 0;
+		int fieldStart = 0;
+		int found = 0;
+		for(int i = 0; i <= length; i++){
+			if(i == length || record.charAt(i) == ','){
+				int slot = field < slots.length ? slots[field] : -1;
+				if(slot >= 0){
+					values[slot] = parseDouble(record, fieldStart, i);
+					if(++found == columns.length){
+						return;
+					}
+				}
+				field++;
+				fieldStart = i + 1;
+			}
+		}
+		throw new IllegalArgumentException("Record has only " + field + " columns: " + record);
+	}
+
+
+	/**
+	 * Parses a decimal number without creating objects. Numbers with more
+	 * significant digits or larger exponents than can be converted exactly,
+	 * or in other formats, are passed on to {@link Double#parseDouble(String)},
+	 * so the result is always the same as that of {@link Double#parseDouble(String)}.
+	 */
+	static double parseDouble(CharSequence s, int from, int to){
+		int start = from;
+		int end = to;
+		while(start < end && isWhitespace(s.charAt(start))){
+			start++;
+		}
+		while(end > start && isWhitespace(s.charAt(end - 1))){
+			end--;
+		}
+
+		int i = start;
+		boolean negative = false;
+		if(i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')){
+			negative = s.charAt(i) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int significantDigits = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean fraction = false;
+		for(; i < end; i++){
+			char c = s.charAt(i);
+			if(c >= '0' && c <= '9'){
+				digits++;
+				if(mantissa > 0 || c != '0'){
+					if(++significantDigits > 18){
+						return parseDoubleSlowly(s, start, end);
+					}
+				}
+				mantissa = 10*mantissa + (c - '0');
+				if(fraction){
+					exponent--;
+				}
+			} else if(c == '.' && !fraction){
+				fraction = true;
+			} else if(c == 'e' || c == 'E'){
+				break;
+			} else{
+				return parseDoubleSlowly(s, start, end);
+			}
+		}
+		if(digits == 0){
+			return parseDoubleSlowly(s, start, end);
+		}
+
+		if(i < end){
+			/* The exponent. */
+			i++;
+			boolean negativeExponent = false;
+			if(i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')){
+				negativeExponent = s.charAt(i) == '-';
+				i++;
+			}
+			if(i == end || end - i > 3){
+				return parseDoubleSlowly(s, start, end);
+			}
+			int e = 0;
+			for(; i < end; i++){
+				char c = s.charAt(i);
+				if(c < '0' || c > '9'){
+					return parseDoubleSlowly(s, start, end);
+				}
+				e = 10*e + (c - '0');
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+
+		double value;
+		if(mantissa == 0){
+			value = 0.0;
+		} else if(mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22){
+			/* Both operands are exact, so the result is correctly rounded. */
+			value = exponent < 0
+					? (double) mantissa / POWERS_OF_TEN[-exponent]
+					: (double) mantissa * POWERS_OF_TEN[exponent];
+		} else{
+			return parseDoubleSlowly(s, start, end);
+		}
+		return negative ? -value : value;
+	}
+
+
+	private static double parseDoubleSlowly(CharSequence s, int from, int to){
+		return Double.parseDouble(s.subSequence(from, to).toString());
+	}
+
+
+	private static boolean isWhitespace(char c){
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+
+	/**
+	 * Receives the parsed columns of each record.
+	 */
+	public interface RecordHandler{
+
+		/**
+		 * @param values the column values, in the order given to the
+		 * 		  {@link DigicoreRecordReader}. The array is reused.
+		 */
+		public void handleRecord(double[] values);
+	}
+
+
+	/** A window on the (ASCII) bytes of a single line in a buffer. */
+	private static class ByteSequence implements CharSequence{
+		private ByteBuffer buffer;
+		private int offset;
+		private int length;
+
+		/**
+		 * @return <code>false</code> if the line is blank.
+		 */
+		private boolean set(ByteBuffer buffer, int start, int end){
+			if(end > start && buffer.get(end - 1) == '\r'){
+				end--;
+			}
+			this.buffer = buffer;
+			this.offset = start;
+			this.length = end - start;
+			return this.length > 0;
+		}
+
+		@Override
+		public int length() {
+			return this.length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return (char) (buffer.get(offset + index) & 0xff);
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			StringBuilder sb = new StringBuilder(end - start);
+			for(int i = start; i < end; i++){
+				sb.append(charAt(i));
+			}
+			return sb;
+		}
+
+		@Override
+		public String toString() {
+			return subSequence(0, length).toString();
+		}
+	}
+
+}
@@ -0,0 +1,244 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming, mergeable sketch of the cumulative observation mass over the
+ * cell counts of a {@link DigiGrid3D}. Cell counts are binned into
+ * logarithmic buckets, so that all counts in a bucket are within the given
+ * relative accuracy of one another, and the sketch keeps the total count
+ * (mass) and the number of cells in each bucket. Cells can be added and
+ * removed as their counts change, and sketches of grids with different
+ * cells can be merged, so risk classes can be updated as new data arrives
+ * without sorting all the cells again.
+ *
+ * <p>Cells in the same bucket are treated as ties, i.e. they all get the
+ * same risk class. The share of the total mass that may be classed wrongly
+ * is therefore at most the mass of the bucket that straddles each
+ * threshold, which is reported by {@link #getMassErrorBound(List, double)}.</p>
+ *
+ * @author jwjoubert
+ */
+public class CountMassSketch {
+	private final static int INITIAL_BUCKETS = 128;
+
+	private final double relativeAccuracy;
+	private final double logGamma;
+
+	/* Dense buckets, where array index i holds bucket i + offset. */
+	private double[] mass = new double[0];
+	private long[] numberOfCells = new long[0];
+	private int offset = 0;
+
+	private double totalMass = 0.0;
+	private long totalCells = 0;
+
+
+	/**
+	 * @param relativeAccuracy the largest relative difference between two
+	 * 		  counts in the same bucket, e.g. 0.01 for 1%.
+	 */
+	public CountMassSketch(double relativeAccuracy) {
+		if(!(relativeAccuracy > 0.0 && relativeAccuracy < 1.0)){
+			throw new IllegalArgumentException("Relative accuracy must be in (0,1), not " + relativeAccuracy);
+		}
+		this.relativeAccuracy = relativeAccuracy;
+		this.logGamma = Math.log((1.0 + relativeAccuracy) / (1.0 - relativeAccuracy));
+	}
+
+
+	public double getRelativeAccuracy(){
+		return this.relativeAccuracy;
+	}
+
+
+	/**
+	 * @return the bucket of the given (positive) count.
+	 */
+	public int getBucket(double count){
+		if(!(count > 0.0)){
+			throw new IllegalArgumentException("Can only sketch positive counts, not " + count);
+		}
+		return (int) Math.ceil(Math.log(count) / logGamma);
+	}
+
+
+	/**
+	 * Adds a cell with the given count.
+	 */
+	public void add(double count){
+		update(getBucket(count), count, 1);
+	}
+
+
+	/**
+	 * Removes a cell with the given count, typically before adding it again
+	 * with its new count.
+	 */
+	public void remove(double count){
+		int bucket = getBucket(count);
+		int index = bucket - offset;
+		if(index < 0 || index >= numberOfCells.length || numberOfCells[index] == 0){
+			throw new IllegalArgumentException("No cell with count " + count + " in the sketch.");
+		}
+		update(bucket, -count, -1);
+	}
+
+
+	/**
+	 * Replaces a cell's old count with its new count. A count of zero means
+	 * the cell is not (or no longer) in the sketch.
+	 */
+	public void update(double oldCount, double newCount){
+		if(oldCount > 0.0){
+			remove(oldCount);
+		}
+		if(newCount > 0.0){
+			add(newCount);
+		}
+	}
+
+
+	/**
+	 * Adds all the cells of another sketch, with the same accuracy, to this one.
+	 */
+	public void merge(CountMassSketch other){
+		if(other.relativeAccuracy != this.relativeAccuracy){
+			throw new IllegalArgumentException("Cannot merge sketches with accuracy "
+					+ other.relativeAccuracy + " and " + this.relativeAccuracy);
+		}
+		for(int i = 0; i < other.numberOfCells.length; i++){
+			if(other.numberOfCells[i] != 0){
+				update(i + other.offset, other.mass[i], other.numberOfCells[i]);
+			}
+		}
+	}
+
+
+	private void update(int bucket, double deltaMass, long deltaCells){
+		ensureBucket(bucket);
+		int index = bucket - offset;
+		numberOfCells[index] += deltaCells;
+		mass[index] = numberOfCells[index] == 0 ? 0.0 : mass[index] + deltaMass;
+		totalCells += deltaCells;
+		totalMass += deltaMass;
+	}
+
+
+	private void ensureBucket(int bucket){
+		if(mass.length == 0){
+			mass = new double[INITIAL_BUCKETS];
+			numberOfCells = new long[INITIAL_BUCKETS];
+			offset = bucket - INITIAL_BUCKETS / 2;
+		}
+		if(bucket < offset){
+			int shift = Math.max(offset - bucket, mass.length);
+			double[] newMass = new double[mass.length + shift];
+			long[] newCells = new long[mass.length + shift];
+			System.arraycopy(mass, 0, newMass, shift, mass.length);
+			System.arraycopy(numberOfCells, 0, newCells, shift, numberOfCells.length);
+			mass = newMass;
+			numberOfCells = newCells;
+			offset -= shift;
+		} else if(bucket - offset >= mass.length){
+			int length = Math.max(bucket - offset + 1, 2*mass.length);
+			mass = Arrays.copyOf(mass, length);
+			numberOfCells = Arrays.copyOf(numberOfCells, length);
+		}
+	}
+
+
+	public double getTotalMass(){
+		return this.totalMass;
+	}
+
+
+	public long getNumberOfCells(){
+		return this.totalCells;
+	}
+
+
+	/**
+	 * @return the mass of all cells in the same or a higher bucket than the
+	 * 		   given count, i.e. the cumulative mass up to and including the
+	 * 		   cells tied with it.
+	 */
+	public double getMassAtLeast(double count){
+		int index = getBucket(count) - offset;
+		double cumulative = 0.0;
+		for(int i = mass.length - 1; i >= Math.max(0, index); i--){
+			cumulative += mass[i];
+		}
+		return cumulative;
+	}
+
+
+	/**
+	 * Finds the risk class of every bucket, from the cumulative share of the
+	 * given total mass, in the same way as {@link GridRanker}. The share is
+	 * clamped to one, since merged and fractional masses need not add up to
+	 * exactly the total.
+	 *
+	 * @return the risk classes, indexed as <code>getBucket(count) - getFirstBucket()</code>.
+	 */
+	int[] getRiskClasses(GridRanker ranker, double total){
+		int[] classes = new int[mass.length];
+		double cumulative = 0.0;
+		for(int i = mass.length - 1; i >= 0; i--){
+			cumulative += mass[i];
+			classes[i] = ranker.getRiskClass(cumulative, total);
+		}
+		return classes;
+	}
+
+
+	int getFirstBucket(){
+		return this.offset;
+	}
+
+
+	/**
+	 * The sketch cannot distinguish between cells in the same bucket, so the
+	 * mass of a bucket in which the cumulative share crosses a threshold may
+	 * end up in the wrong class.
+	 *
+	 * @return the largest share of the total mass that may be in the wrong
+	 * 		   risk class for any of the thresholds.
+	 */
+	public double getMassErrorBound(List<Double> riskThresholds, double total){
+		double bound = 0.0;
+		double cumulative = 0.0;
+		for(int i = mass.length - 1; i >= 0; i--){
+			double before = cumulative / total;
+			cumulative += mass[i];
+			double after = Math.min(cumulative / total, 1.0);
+			for(double threshold : riskThresholds){
+				if(before < threshold && after > threshold){
+					bound = Math.max(bound, mass[i] / total);
+				}
+			}
+		}
+		return bound;
+	}
+
+}
@@ -20,21 +20,9 @@
 
 package org.matsim.up.acceleration.grid;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-
 import org.apache.log4j.Logger;
-import org.locationtech.jts.geom.Coordinate;
-import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Point;
-import org.locationtech.jts.geom.Polygon;
 import org.matsim.up.utils.grid.GeneralGrid;
-import org.matsim.up.utils.grid.GeneralGrid.GridType;
 
 
 /**
@@ -45,74 +33,78 @@ import org.matsim.up.utils.grid.GeneralGrid.GridType;
  * relate to lateral and longitudinal acceleration, while the z-dimension is
  * ignored.
  * 
+ * <p>The hexagons are those of a {@link HexLattice}, i.e. of the same size 
+ * and orientation as the cells of a hexagonal {@link GeneralGrid}. A record
+ * is binned by computing the (axial) coordinates of its hexagon directly, 
+ * and the counts and risk classes are kept in an {@link FCCCellStore} keyed 
+ * by the packed coordinates. Hexagons are only created once records fall in
+ * them, so the grid needs no extent, and grows wherever the data goes.</p>
+ * 
  * @see DigiGrid3D for a three-dimensional implementation.
  *
  * @author jwjoubert
  */
 public abstract class DigiGrid2D extends DigiGrid {
 	final private Logger log = Logger.getLogger(DigiGrid2D.class);
-	final private GeometryFactory gf;
-	protected GeneralGrid grid;
 	private final double scale;
 	private double pointsConsidered = 0.0;
 
-	protected Map<Point, Double> map;
-	protected Map<Point, Integer> mapRating;
+	protected final HexLattice lattice;
+	protected FCCCellStore cells;
 
 	public DigiGrid2D(final double scale) {
 		this.scale = scale;
-		this.grid = new GeneralGrid(scale, GridType.HEX);
-		this.gf = new GeometryFactory();
+		this.lattice = new HexLattice(scale);
 	}
 	
+	/**
+	 * Creates an empty grid. The extent is not needed, since hexagons are
+	 * created as records fall in them.
+	 */
 	@Override
 	public void setupGrid(String filename) {
-		log.info("Setting up grid from " + filename);
-		/* Get the extreme points from the data.
-		 * TODO For now (11 May) this will only hard coded values. In future
-		 * one may want to parse this from the raw data. */
-		double minX = -1000d;
-		double maxX = 1000d;
-		double minY = -1200d;
-		double maxY = 1200d;
-		
-		/* Establish the geometry used to build the grid. */
-		Coordinate c1 = new Coordinate(minX, minY); // Bottom-left
-		Coordinate c2 = new Coordinate(maxX, minY); // Bottom-right
-		Coordinate c3 = new Coordinate(maxX, maxY); // Top-right
-		Coordinate c4 = new Coordinate(minX, maxY); // Top-left
-		Coordinate[] ca = {c1, c2, c3, c4, c1};
-		Polygon polygon = gf.createPolygon(ca);
-		
-		/* Build the grid. */
-		grid.generateGrid(polygon);
-		
-		/* Initialise each cell with a zero count. */
-		this.map = new HashMap<Point, Double>();
-		for(Point p : this.grid.getGrid().values()){
-			this.map.put(p, new Double(0.0));
-		}
-		
-		log.info("Done setting up grid.");
+		log.info("Setting up grid for " + filename);
+		this.cells = new FCCCellStore();
+		this.pointsConsidered = 0.0;
+		this.setPopulated(false);
+		this.setRanked(false);
+		log.info("Done setting up grid. Hexagons are created as records are added.");
 	}
 	
 	
 	public void incrementValue(double x, double y, double weight){
-		Point point = gf.createPoint(new Coordinate(x, y));
-		if(grid.isInGrid(point)){
-			Point centroid = grid.getGrid().getClosest(x, y);
-			map.put(centroid, map.get(centroid) + weight);
-			this.pointsConsidered += weight;
-			this.setPopulated(true);
-		} else{
+		long key = lattice.getCellKey(x, y);
+		if(key == HexLattice.NO_KEY){
 			String coord = String.format("(%f;%f)", x, y);
-			throw new RuntimeException("The point " + coord + 
-					" is not within the grid extent. Reconsider the method DigiGrid2D.setupGrid(...)");
+			throw new IllegalArgumentException("The point " + coord + " is too far from the origin to be binned.");
 		}
+		cells.incrementCount(cells.getOrCreateCell(key), weight);
+		this.pointsConsidered += weight;
+		this.setPopulated(true);
 	}
 	
+	
+	/**
+	 * @return the {@link HexLattice} key of the hexagon containing the given 
+	 * 		   record, whether the cell has been created or not.
+	 */
+	public long getCellKey(double x, double y){
+		return lattice.getCellKey(x, y);
+	}
+	
+	
 	public double getValue(Point p){
-		return this.map.get(p);
+		return getValue(p.getX(), p.getY());
+	}
+	
+	
+	/**
+	 * @return the (weighted) number of records in the hexagon containing the
+	 * 		   given point.
+	 */
+	public double getValue(double x, double y){
+		int cell = cells.getCell(lattice.getCellKey(x, y));
+		return cell < 0 ? 0.0 : cells.getCount(cell);
 	}
 	
 	
@@ -124,11 +116,7 @@ public abstract class DigiGrid2D extends DigiGrid {
 	 * 		   the grid first being ranked.  
 	 */
 	public int getCellRisk(Point p) throws IllegalArgumentException{
-		if(!this.isRanked()){
-			throw new IllegalArgumentException("Cannot get cell risk. Grid has been ranked yet.");
-		} else{
-			return this.mapRating.get(p);
-		}
+		return getCellRisk(p.getX(), p.getY());
 	}
 	
 
@@ -137,80 +125,45 @@ public abstract class DigiGrid2D extends DigiGrid {
 	 */
 	@Override
 	public void rankGridCells() {
-		if(!this.isPopulated() || this.map.size() == 0){
+		if(!this.isPopulated() || cells.getNumberOfOccupiedCells() == 0){
 			throw new RuntimeException("Cannot rank zero cells. Grid has possibly not been populated yet.");
 		}
 		log.info("Ranking grid cells...");
 
 		/* Cells are ranked based on the weighted number of records associated 
-		 * with them. Sorted from highest to lowest. */
-		Comparator<Point> comparator = new Comparator<Point>() {
-			@Override
-			public int compare(Point o1, Point o2) {
-				return map.get(o2).compareTo(map.get(o1));
-			}
-		};
-		List<Point> sortedCells = new ArrayList<>(map.keySet());
-		Collections.sort(sortedCells, comparator);
+		 * with them. Only occupied hexagons are ranked. */
+		double[] sorted = new GridRanker(getRiskThresholds()).rank(cells, pointsConsidered);
 		
 		/* Report the top 20 cell values. */
-		log.info("   20 polyhedra with largest number of observations:");
-		for(int i = 0; i < 20; i++){
-			log.info(String.format("      %d: %.1f observations", i+1, map.get(sortedCells.get(i))));
-		}
-
-		double totalAdded = 0.0;
-		double cumulative = 0.0;
-		mapRating = new TreeMap<Point, Integer>(comparator);
-		
-		List<Point> cellsToRemove = new ArrayList<Point>();
-
-		double maxValue = 0.0;
-		for(int i = 0; i < sortedCells.size(); i++){
-			Point p = sortedCells.get(i);
-			double obs = map.get(p);
-			if(obs > 0){
-				maxValue = Math.max(maxValue, (double)obs);
-				totalAdded += (double)obs;
-				cumulative = totalAdded / pointsConsidered;
-				
-				/* Get the rating class for this value. */
-				Integer ratingZone = null;
-				int zoneIndex = 0;
-				while(ratingZone == null && zoneIndex < getRiskThresholds().size()){
-					if(cumulative <= getRiskThresholds().get(zoneIndex)){
-						ratingZone = new Integer(zoneIndex);
-					} else{
-						zoneIndex++;
-					}
-				}
-				mapRating.put(p, ratingZone);
-			} else{
-				cellsToRemove.add(p);
-			}
-		}
-
-		/* Remove zero-count hexagons. */
-		for(Point p : cellsToRemove){
-			map.remove(p);
+		log.info("   20 hexagons with largest number of observations:");
+		for(int i = 0; i < Math.min(20, sorted.length); i++){
+			log.info(String.format("      %d: %.1f observations", i+1, sorted[sorted.length - 1 - i]));
 		}
+		double maxValue = sorted[sorted.length - 1];
 		
 		this.setRanked(true);
 		log.info("Done ranking grid cells.");
-		log.info("A total of " + map.size() + " hexagons contain points (max value: " + maxValue + ")");
+		log.info("A total of " + sorted.length + " hexagons contain points (max value: " + maxValue + ")");
 	}
 	
+	
+	/**
+	 * @return the risk class of the hexagon containing the record, or 
+	 * 		   {@link FCCCellStore#UNRATED} if no records fell in it.
+	 * @throws IllegalArgumentException if the method is called without having 
+	 * 		   the grid first being ranked.  
+	 */
 	public int getCellRisk(double x, double y){
-		Point record = this.gf.createPoint(new Coordinate(x, y));
-		if(this.grid.isInGrid(record)){
-			Point p = this.grid.getGrid().getClosest(x, y);
-			return this.getCellRisk(p);
-		} else{
-			/* The record is not in the grid! */
-			String coord = String.format("(%f;%f)", x, y);
-			throw new RuntimeException("The point " + coord + 
-					" is not within the grid extent. Reconsider the method DigiGrid2D.setupGrid(...)");
+		if(!this.isRanked()){
+			throw new IllegalArgumentException("Cannot get cell risk. Grid has not been ranked yet.");
 		}
+		int cell = cells.getCell(lattice.getCellKey(x, y));
+		return cell < 0 ? FCCCellStore.UNRATED : cells.getRiskClass(cell);
+	}
+	
+	
+	public int getNumberOfOccupiedCells(){
+		return cells.getNumberOfOccupiedCells();
 	}
 	
 	public double getScale(){
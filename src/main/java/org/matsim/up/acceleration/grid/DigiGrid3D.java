@@ -24,12 +24,10 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 import org.jzy3d.analysis.AbstractAnalysis;
@@ -48,6 +46,11 @@ import org.jzy3d.plot3d.rendering.lights.Light;
 import org.jzy3d.plot3d.rendering.view.modes.ViewPositionMode;
 import org.matsim.core.utils.io.IOUtils;
 import org.matsim.core.utils.misc.Counter;
+import org.matsim.up.acceleration.DigicoreRecordCache;
+import org.matsim.up.acceleration.DigicoreRecordCache.Column;
+import org.matsim.up.acceleration.DigicoreRecordReader;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
+import org.matsim.up.utils.grid.KernelDensityEstimator.KdeType;
 
 /**
  * Class that acts as the container for the three-dimensional grid containing
@@ -62,10 +65,9 @@ import org.matsim.core.utils.misc.Counter;
 public abstract class DigiGrid3D extends AbstractAnalysis{
 	final private Logger LOG = Logger.getLogger(DigiGrid_XYZ.class);
 
-	protected OcTree<Coord3d> ot;
-
-	protected Map<Coord3d, Double> map;
-	protected Map<Coord3d, Integer> mapRating;
+	protected FCCLattice lattice;
+	protected FCCCellStore cells;
+	protected LinearOcTree ot;
 
 	protected List<Double> riskThresholds;
 	
@@ -79,6 +81,16 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 	
 	private boolean visualiseOnScreen = true;
 	private double sliceDepth = 1009.0;
+	private int numberOfThreads = 1;
+	/* Created with the first batch lookup that needs more than one thread. */
+	private ForkJoinPool pool = null;
+	private boolean useRecordCache = false;
+	private CountMassSketch sketch = null;
+	private FCCKernelStencil kernel = null;
+	private int polyhedraCoarsening = 1;
+	
+	/* The fewest records worth handing to a thread in a batch lookup. */
+	private final static int MIN_BATCH_CHUNK = 10000;
 	
 	/* Specify colours */
 	final static Color DIGI_GREEN = new Color(147, 214, 83, 255);
@@ -86,6 +98,8 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 	final static Color DIGI_ORANGE = new Color(250, 164, 54, 255);
 	final static Color DIGI_RED = new Color(246, 43, 32, 255);
 	final static Color DIGI_GRAY = new Color(100, 100, 100, 255);
+	/* The colours of the risk classes, from the lowest to the highest risk. */
+	final static Color[] DIGI_RISK_COLOURS = {DIGI_GREEN, DIGI_YELLOW, DIGI_ORANGE, DIGI_RED};
 	
 	/* Specify bounding box */
 	static float BOUNDING_BOX_X_MIN = -700f;
@@ -104,31 +118,567 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 	
 	public abstract Coord3d convertToCoord3d(double x, double y, double z);
 	
-	public abstract Coord3d getClosest(double x, double y, double z);
+	/**
+	 * @return the (zero-based) columns of the raw accelerometer records that
+	 * 		   hold the x, y, and z-values of the grid, in that order.
+	 */
+	protected abstract int[] getRecordColumns();
+	
+	/**
+	 * @return true if the first line of the raw input data is a header.
+	 */
+	protected abstract boolean hasInputHeader();
 	
 	public abstract void writeCellCountsAndRiskClasses(String outputFolder);
 	
 	
-	/* Cells are ranked based on the number of records associated with them */  
-	private Comparator<Coord3d> getGridComparator(){
-		return new Comparator<Coord3d>() {
-			@Override
-			public int compare(Coord3d o1, Coord3d o2) {
-				return map.get(o2).compareTo(map.get(o1));
+	/**
+	 * @return a reader that parses the x, y, and z-values of the raw 
+	 * 		   accelerometer records, skipping the header if there is one.
+	 */
+	protected DigicoreRecordReader getRecordReader(){
+		DigicoreRecordReader reader = new DigicoreRecordReader(getRecordColumns());
+		reader.setHasHeader(hasInputHeader());
+		return reader;
+	}
+	
+	
+	/**
+	 * Converts the z-value of a record to the z-axis of the grid. By default
+	 * the value is used as is.
+	 */
+	protected double getGridZ(double z){
+		return z;
+	}
+	
+	
+	/**
+	 * Creates an empty grid. Cells are only created once records fall in 
+	 * them, so the grid can be populated in a single pass over the data
+	 * without knowing its extent in advance.
+	 */
+	protected void setupEmptyGrid(){
+		this.lattice = new FCCLattice(scale);
+		this.cells = new FCCCellStore();
+		this.ot = null;
+		this.pointsConsidered = 0.0;
+		this.isPopulated = false;
+		this.isRanked = false;
+		if(sketch != null){
+			sketch = new CountMassSketch(sketch.getRelativeAccuracy());
+		}
+	}
+	
+	
+	/**
+	 * @return the {@link FCCLattice} key of the dodecahedron containing the 
+	 * 		   given record, whether the cell has been created or not.
+	 */
+	public long getCellKey(double x, double y, double z){
+		return lattice.getCellKey(x, y, getGridZ(z));
+	}
+	
+	
+	/**
+	 * Finds the cell (dodecahedron) containing the given record.
+	 * 
+	 * @return the index of the cell, or -1 if no record has fallen in that 
+	 * 		   cell yet.
+	 */
+	public int getClosestCell(double x, double y, double z){
+		return cells.getCell(getCellKey(x, y, z));
+	}
+	
+	
+	/**
+	 * Finds the cell containing the given record or, if no such cell exists,
+	 * the closest cell that does. The latter is found with a {@link LinearOcTree}
+	 * that is built once the grid has been populated, so this should only be
+	 * used once the grid is complete, for example when scoring records. 
+	 * 
+	 * @return the index of the cell, or -1 if the grid is empty.
+	 */
+	public int getClosestOccupiedCell(double x, double y, double z){
+		int cell = getClosestCell(x, y, z);
+		if(cell < 0 && cells.size() > 0){
+			return getOcTree().get(x, y, getGridZ(z));
+		}
+		return cell;
+	}
+	
+	
+	/* Only rebuilt if cells were created since it was last built. */
+	synchronized LinearOcTree getOcTree(){
+		if(ot == null){
+			buildOcTree();
+		}
+		return ot;
+	}
+
+
+	/**
+	 * Finds the cells containing a batch of records, as with
+	 * {@link #getClosestCell(double, double, double)}. Large batches are
+	 * split into chunks that are processed on the grid's number of threads.
+	 *
+	 * @param cells filled with the index of each record's cell, or -1.
+	 */
+	public void getClosestCells(double[] x, double[] y, double[] z, int[] cells){
+		getClosestCells(x, y, z, cells, null);
+	}
+
+
+	/**
+	 * Finds the cells containing a batch of records or, where no such cell
+	 * exists, the closest cell that does, as with
+	 * {@link #getClosestOccupiedCell(double, double, double)}.
+	 *
+	 * @param cells filled with the index of each record's cell, or -1 if the
+	 * 		  grid is empty.
+	 */
+	public void getClosestOccupiedCells(double[] x, double[] y, double[] z, int[] cells){
+		getClosestCells(x, y, z, cells, this.cells.size() > 0 ? getOcTree() : null);
+	}
+
+
+	private void getClosestCells(final double[] x, final double[] y, final double[] z, final int[] result, final LinearOcTree tree){
+		final int n = result.length;
+		if(x.length != n || y.length != n || z.length != n){
+			throw new IllegalArgumentException("Need the same number of coordinates and cells.");
+		}
+		int chunks = Math.min(numberOfThreads, (n + MIN_BATCH_CHUNK - 1) / MIN_BATCH_CHUNK);
+		if(chunks <= 1){
+			getClosestCells(0, n, x, y, z, result, tree);
+			return;
+		}
+
+		ForkJoinPool pool = getPool();
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for(int i = 0; i < chunks; i++){
+			final int from = (int) ((long) n * i / chunks);
+			final int to = (int) ((long) n * (i + 1) / chunks);
+			futures.add(pool.submit(new Runnable() {
+				@Override
+				public void run() {
+					getClosestCells(from, to, x, y, z, result, tree);
+				}
+			}));
+		}
+		try{
+			for(Future<?> future : futures){
+				future.get();
 			}
-		};
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot find the closest cells of " + n + " records.");
+		}
+	}
+
+
+	/* The pool's workers are daemon threads, so an idle pool need not be shut down. */
+	private synchronized ForkJoinPool getPool(){
+		if(this.pool == null){
+			this.pool = new ForkJoinPool(numberOfThreads);
+		}
+		return this.pool;
+	}
+
+
+	/* Only reads the lattice, cells and tree, so chunks can run concurrently. */
+	private void getClosestCells(int from, int to, double[] x, double[] y, double[] z, int[] result, LinearOcTree tree){
+		for(int i = from; i < to; i++){
+			double gridZ = getGridZ(z[i]);
+			int cell = cells.getCell(lattice.getCellKey(x[i], y[i], gridZ));
+			if(cell < 0 && tree != null){
+				cell = tree.get(x[i], y[i], gridZ);
+			}
+			result[i] = cell;
+		}
+	}
+	
+	
+	/**
+	 * Finds the centroid of the dodecahedron containing the given record, 
+	 * whether any record has fallen in that cell or not. A new {@link Coord3d}
+	 * is created with every call, so rather use 
+	 * {@link #getClosestCell(double, double, double)} when processing many
+	 * records.
+	 * 
+	 * @return the centroid, in grid coordinates, or <code>null</code> if the
+	 * 		   record is too far from the origin to be on the lattice.
+	 */
+	public Coord3d getClosest(double x, double y, double z){
+		long key = getCellKey(x, y, z);
+		if(key == FCCLattice.NO_KEY){
+			return null;
+		}
+		return new Coord3d(lattice.getKeyX(key), lattice.getKeyY(key), lattice.getKeyZ(key));
+	}
+	
+	
+	/**
+	 * Creates the centroid of a cell, in grid coordinates.
+	 */
+	public Coord3d getCentroid(int cell){
+		return new Coord3d(getCellX(cell), getCellY(cell), getCellZ(cell));
+	}
+	
+	
+	protected double getCellX(int cell){
+		return lattice.getKeyX(cells.getKey(cell));
+	}
+	
+	
+	protected double getCellY(int cell){
+		return lattice.getKeyY(cells.getKey(cell));
+	}
+	
+	
+	/**
+	 * @return the z-value of the cell's centroid, in grid coordinates.
+	 */
+	protected double getCellZ(int cell){
+		return lattice.getKeyZ(cells.getKey(cell));
+	}
+	
+	
+	/* Centroids are already in grid coordinates, so no conversion is needed. */
+	private long getKey(Coord3d c){
+		long key = lattice.getCellKey(c.x, c.y, c.z);
+		if(key == FCCLattice.NO_KEY){
+			throw new IllegalArgumentException("The centroid (" + c.x + ";" + c.y + ";" + c.z + ") is not on the lattice.");
+		}
+		return key;
 	}
 	
 	
 	public double getCount(Coord3d c){
-		return this.map.get(c);
+		int cell = cells.getCell(getKey(c));
+		return cell < 0 ? 0.0 : getCount(cell);
+	}
+	
+	
+	public double getCount(int cell){
+		return this.cells.getCount(cell);
 	}
 	
 	
 	public void incrementCount(Coord3d c, double weight){
-		this.map.put(c, this.map.get(c)+weight);
+		incrementCount(getOrCreateCell(getKey(c)), weight);
+	}
+	
+	
+	/**
+	 * Adds a record to the cell containing it, creating the cell if needed.
+	 */
+	public void incrementCount(double x, double y, double z, double weight){
+		long key = getCellKey(x, y, z);
+		if(key == FCCLattice.NO_KEY){
+			throw new IllegalArgumentException("The record (" + x + ";" + y + ";" + z + ") is not on the lattice.");
+		}
+		incrementCount(getOrCreateCell(key), weight);
+	}
+	
+	
+	public void incrementCount(int cell, double weight){
+		double oldCount = this.cells.getCount(cell);
+		this.cells.incrementCount(cell, weight);
 		this.pointsConsidered += weight;
 		this.isPopulated = true;
+		if(sketch != null){
+			sketch.update(oldCount, oldCount + weight);
+		}
+	}
+	
+	
+	/**
+	 * Bins a single raw record into the cell containing it, creating the cell
+	 * if needed. With a kernel density estimate the record is spread over the
+	 * cell and its neighbours instead.
+	 * 
+	 * @return false if the record is not on the lattice, and was ignored.
+	 */
+	boolean addRecord(double x, double y, double z){
+		return addRecord(this.cells, x, y, z) > 0.0;
+	}
+	
+	
+	/**
+	 * Bins a single raw record, as for {@link #addRecord(double, double, double)},
+	 * but into the given store, which may be the (thread-confined) partial 
+	 * counts of a worker rather than the grid's own cells.
+	 * 
+	 * @return the weight added, or zero if the record is not on the lattice.
+	 */
+	double addRecord(FCCCellStore target, double x, double y, double z){
+		long key = getCellKey(x, y, z);
+		if(key == FCCLattice.NO_KEY){
+			return 0.0;
+		}
+		if(kernel == null){
+			addWeight(target, key, 1.0);
+			return 1.0;
+		}
+		double added = 0.0;
+		for(int i = 0; i < kernel.size(); i++){
+			long neighbour = kernel.getNeighbourKey(key, i);
+			if(neighbour != FCCLattice.NO_KEY){
+				addWeight(target, neighbour, kernel.getWeight(i));
+				added += kernel.getWeight(i);
+			}
+		}
+		return added;
+	}
+	
+	
+	/* The grid's own cells also keep the points considered and the sketch up to date. */
+	private void addWeight(FCCCellStore target, long key, double weight){
+		if(target == this.cells){
+			incrementCount(getOrCreateCell(key), weight);
+		} else{
+			target.incrementCount(target.getOrCreateCell(key), weight);
+		}
+	}
+	
+	
+	/**
+	 * Spreads every raw record over the dodecahedra around the one containing
+	 * it, using a kernel density estimate, rather than only counting it in 
+	 * that one cell. This gives smoother risk spaces for sparse data. The 
+	 * kernel must be set before the grid is populated.
+	 * 
+	 * @param kdeType the kernel function, as for the two-dimensional 
+	 * 		  {@link org.matsim.up.utils.grid.KernelDensityEstimator}, or 
+	 * 		  <code>null</code> to only count records in their own cell (the 
+	 * 		  default);
+	 * @param radius the kernel's radius, in grid coordinates.
+	 */
+	public void setKernelDensity(KdeType kdeType, double radius){
+		this.kernel = kdeType == null ? null : new FCCKernelStencil(scale, kdeType, radius);
+	}
+	
+	
+	/**
+	 * @return the kernel records are spread with, or <code>null</code> if 
+	 * 		   records are only counted in their own cell.
+	 */
+	public KdeType getKdeType(){
+		return kernel == null ? null : kernel.getKdeType();
+	}
+	
+	
+	FCCKernelStencil getKernelStencil(){
+		return this.kernel;
+	}
+	
+	
+	/* A new cell invalidates the OcTree of (occupied) cells. */
+	private int getOrCreateCell(long key){
+		int size = cells.size();
+		int cell = cells.getOrCreateCell(key);
+		if(cells.size() > size){
+			ot = null;
+		}
+		return cell;
+	}
+	
+	
+	/* Merges partial counts, from a store with the same scale, into the grid. */
+	void addCounts(FCCCellStore partial, double total){
+		if(sketch == null){
+			this.cells.add(partial);
+		} else{
+			for(int i = 0; i < partial.size(); i++){
+				int cell = this.cells.getOrCreateCell(partial.getKey(i));
+				double oldCount = this.cells.getCount(cell);
+				this.cells.incrementCount(cell, partial.getCount(i));
+				sketch.update(oldCount, oldCount + partial.getCount(i));
+			}
+		}
+		this.pointsConsidered += total;
+		this.isPopulated = true;
+		this.ot = null;
+	}
+	
+	
+	/**
+	 * Builds the (read-only) {@link LinearOcTree} of all the cells in the 
+	 * grid. Its bounds are only fixed now, once the extent of the cells is 
+	 * known.
+	 */
+	protected void buildOcTree(){
+		if(cells.size() == 0){
+			this.ot = null;
+			return;
+		}
+		int n = cells.size();
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] z = new double[n];
+		int[] values = new int[n];
+		double minX = Double.POSITIVE_INFINITY;
+		double minY = Double.POSITIVE_INFINITY;
+		double minZ = Double.POSITIVE_INFINITY;
+		double maxX = Double.NEGATIVE_INFINITY;
+		double maxY = Double.NEGATIVE_INFINITY;
+		double maxZ = Double.NEGATIVE_INFINITY;
+		for(int cell = 0; cell < n; cell++){
+			x[cell] = getCellX(cell);
+			y[cell] = getCellY(cell);
+			z[cell] = getCellZ(cell);
+			values[cell] = cell;
+			minX = Math.min(minX, x[cell]);
+			minY = Math.min(minY, y[cell]);
+			minZ = Math.min(minZ, z[cell]);
+			maxX = Math.max(maxX, x[cell]);
+			maxY = Math.max(maxY, y[cell]);
+			maxZ = Math.max(maxZ, z[cell]);
+		}
+		this.ot = LinearOcTree.build(minX, minY, minZ, maxX, maxY, maxZ, x, y, z, values);
+	}
+	
+	
+	/**
+	 * Bins each raw accelerometer record in the given file into the cell that
+	 * contains it, creating cells as they are needed. The file is read only
+	 * once. The grid must first be set up with {@link #setupGrid(String)}.
+	 * If more than one thread is set with {@link #setNumberOfThreads(int)}, 
+	 * and the file is not compressed, the file is split and parsed 
+	 * concurrently (see {@link ParallelGridPopulator}). If the record cache 
+	 * is used (see {@link #setUseRecordCache(boolean)}), the records are 
+	 * rather read from the cache of the file, building it first if needed.
+	 * 
+	 * @param filename
+	 */
+	public void populateGrid(String filename){
+		if(cells == null){
+			LOG.error("Cannot populate the grid before it is set up.");
+			throw new RuntimeException("First set up the grid with setupGrid() method.");
+		}
+		if(useRecordCache){
+			populateGridFromCache(getRecordCache(filename));
+		} else if(numberOfThreads > 1 && !filename.endsWith(".gz")){
+			new ParallelGridPopulator(this, numberOfThreads).populate(filename);
+		} else{
+			LOG.info("Populating grid from " + filename + "...");
+			Counter counter = new Counter("   lines # ");
+			CellCounter cellCounter = new CellCounter(counter);
+			getRecordReader().read(filename, cellCounter);
+			counter.printCounter();
+			cellCounter.reportOutside();
+		}
+		buildOcTree();
+		LOG.info("Grid now has " + cells.size() + " dodecahedra.");
+	}
+	
+	
+	private void populateGridFromCache(DigicoreRecordCache cache){
+		int[] recordColumns = getRecordColumns();
+		Column[] columns = new Column[recordColumns.length];
+		for(int i = 0; i < recordColumns.length; i++){
+			columns[i] = cache.getColumn(recordColumns[i]);
+		}
+		if(numberOfThreads > 1){
+			new ParallelGridPopulator(this, numberOfThreads).populate(cache, columns);
+		} else{
+			LOG.info("Populating grid from " + cache.getFilename() + "...");
+			Counter counter = new Counter("   records # ");
+			CellCounter cellCounter = new CellCounter(counter);
+			cache.read(cellCounter, columns);
+			counter.printCounter();
+			cellCounter.reportOutside();
+		}
+	}
+	
+	
+	/**
+	 * Opens the record cache of the given raw file, building it first if it
+	 * does not exist or is out of date. Only the grid's own columns are 
+	 * cached, so columns the grid never reads, such as the event, are neither
+	 * parsed nor stored. The accelerations and speed of the Digicore records
+	 * keep their own slot in the cache; other columns take the x, y and z 
+	 * slots, in order.
+	 */
+	protected DigicoreRecordCache getRecordCache(String filename){
+		int[] recordColumns = getRecordColumns();
+		int[] slots = {-1, -1, -1, -1, -1};
+		boolean isDigicore = true;
+		for(int column : recordColumns){
+			isDigicore &= column >= 5 && column <= 8;
+		}
+		for(int i = 0; i < recordColumns.length; i++){
+			slots[isDigicore ? recordColumns[i] - 5 : i] = recordColumns[i];
+		}
+		return DigicoreRecordCache.getCache(filename, hasInputHeader(), 
+				slots[0], slots[1], slots[2], slots[3], slots[4]);
+	}
+	
+	
+	public boolean isUsingRecordCache(){
+		return this.useRecordCache;
+	}
+	
+	
+	/**
+	 * Indicates if raw files should be read through a columnar binary 
+	 * {@link DigicoreRecordCache}, written next to the raw file the first time
+	 * it is read. This pays off when grids are built repeatedly, for example 
+	 * at different scales, from the same data. The default is not to use the
+	 * cache.
+	 */
+	public void setUseRecordCache(boolean useRecordCache){
+		this.useRecordCache = useRecordCache;
+	}
+	
+	
+	/** Bins records in the grid itself. */
+	private class CellCounter implements RecordHandler{
+		private final Counter counter;
+		private long outside = 0;
+		
+		private CellCounter(Counter counter) {
+			this.counter = counter;
+		}
+		
+		@Override
+		public void handleRecord(double[] values) {
+			if(!addRecord(values[0], values[1], values[2])){
+				outside++;
+			}
+			counter.incCounter();
+		}
+		
+		private void reportOutside(){
+			if(outside > 0){
+				LOG.warn("A total of " + outside + " records fell outside the lattice and were ignored.");
+			}
+			LOG.info("Done populating grid.");
+		}
+	}
+	
+	
+	public int getNumberOfThreads(){
+		return this.numberOfThreads;
+	}
+	
+	
+	/**
+	 * Sets the number of threads used to populate the grid from raw data, and
+	 * to find the cells of a batch of records. The default is a single thread.
+	 */
+	public void setNumberOfThreads(int numberOfThreads){
+		if(numberOfThreads < 1){
+			throw new IllegalArgumentException("Need at least one thread, not " + numberOfThreads);
+		}
+		if(numberOfThreads != this.numberOfThreads){
+			synchronized(this){
+				if(this.pool != null){
+					this.pool.shutdown();
+					this.pool = null;
+				}
+			}
+		}
+		this.numberOfThreads = numberOfThreads;
 	}
 	
 	
@@ -138,7 +688,25 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 	
 	
 	public int getCellRisk(Coord3d c){
-		return this.mapRating.get(c);
+		int cell = cells.getCell(getKey(c));
+		return cell < 0 ? FCCCellStore.UNRATED : getCellRisk(cell);
+	}
+	
+	
+	/**
+	 * @return the risk class of the cell, or {@link FCCCellStore#UNRATED} if
+	 * 		   the cell has no observations or the grid has not been ranked.
+	 */
+	public int getCellRisk(int cell){
+		return this.cells.getRiskClass(cell);
+	}
+	
+	
+	/**
+	 * @return the number of cells with at least one observation.
+	 */
+	public int getNumberOfOccupiedCells(){
+		return this.cells.getNumberOfOccupiedCells();
 	}
 	
 	
@@ -146,59 +714,92 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 	 * Sort the polyhedra based on their counts only.
 	 */
 	public void rankGridCells(){
-		if(map.size() == 0){
+		if(cells == null || cells.getNumberOfOccupiedCells() == 0){
 			throw new RuntimeException("Cannot rank zero cells. Grid has possibly not been populated yet.");
 		}
 		LOG.info("Ranking polyhedra cells based on point-counts only.");
 
-		List<Coord3d> sortedCoords = new ArrayList<Coord3d>(map.keySet());
-		Collections.sort(sortedCoords, getGridComparator());
+		/* Only occupied cells are ranked, the rest remain unrated. */
+		double[] sorted = new GridRanker(riskThresholds).rank(cells, pointsConsidered);
 		
 		/* Report the top 20 cell values. */
 		LOG.info("   20 polyhedra with largest number of observations:");
-		for(int i = 0; i < 20; i++){
-			LOG.info(String.format("      %d: %.1f observations", i+1, map.get(sortedCoords.get(i))));
+		for(int i = 0; i < Math.min(20, sorted.length); i++){
+			LOG.info(String.format("      %d: %.1f observations", i+1, sorted[sorted.length - 1 - i]));
 		}
+		double maxValue = sorted[sorted.length - 1];
 		
-		double totalAdded = 0.0;
-		double cumulative = 0.0;
-		mapRating = new TreeMap<Coord3d, Integer>(getGridComparator());
-		
-		List<Coord3d> centroidsToRemove = new ArrayList<Coord3d>();
-
-		double maxValue = 0.0;
-		for(int i = 0; i < sortedCoords.size(); i++){
-			Coord3d c = sortedCoords.get(i);
-			double obs = map.get(c);
-			if(obs > 0){
-				maxValue = Math.max(maxValue, (double)obs);
-				totalAdded += (double)obs;
-				cumulative = totalAdded / pointsConsidered;
-				
-				/* Get the rating class for this value. */
-				Integer ratingZone = null;
-				int zoneIndex = 0;
-				while(ratingZone == null && zoneIndex < this.riskThresholds.size()){
-					if(cumulative <= this.riskThresholds.get(zoneIndex)){
-						ratingZone = zoneIndex;
-					} else{
-						zoneIndex++;
-					}
-				}
-				mapRating.put(c, ratingZone);
-			} else{
-				centroidsToRemove.add(c);
+		this.isRanked = true;
+		LOG.info("Done ranking polyhedra cells.");
+		LOG.info("A total of " + sorted.length + " dodecahedra contains points (max value: " + maxValue + ")");
+	}
+	
+	
+	/**
+	 * Keeps a {@link CountMassSketch} of the cell counts up to date as 
+	 * records are added, so that the grid can be re-ranked with 
+	 * {@link #rankGridCellsIncrementally()} after every new batch of data,
+	 * without sorting all the cells. The sketch is built from the current 
+	 * cells.
+	 * 
+	 * @param relativeAccuracy the relative accuracy of the sketch, e.g. 0.01.
+	 */
+	public void setRankingSketch(double relativeAccuracy){
+		this.sketch = new CountMassSketch(relativeAccuracy);
+		rebuildSketch();
+	}
+	
+	
+	/**
+	 * @return the sketch of the cell counts, or null if it is not kept.
+	 */
+	public CountMassSketch getRankingSketch(){
+		return this.sketch;
+	}
+	
+	
+	private void rebuildSketch(){
+		if(sketch == null){
+			return;
+		}
+		sketch = new CountMassSketch(sketch.getRelativeAccuracy());
+		if(cells != null){
+			for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+				sketch.add(cells.getCount(cell));
 			}
 		}
-		
-		/* Remove zero-count dodecahedra. */
-		for(Coord3d c : centroidsToRemove){
-			map.remove(c);
+	}
+	
+	
+	/**
+	 * Ranks the cells from the {@link CountMassSketch} rather than by sorting
+	 * them. Cells whose counts are within the relative accuracy of the sketch
+	 * of one another are treated as ties (see {@link GridRanker}).
+	 * 
+	 * @return the largest share of the observations that may be in the wrong
+	 * 		   risk class, compared to {@link #rankGridCells()}.
+	 */
+	public double rankGridCellsIncrementally(){
+		if(sketch == null){
+			throw new RuntimeException("First keep a sketch with setRankingSketch() method.");
+		}
+		if(cells == null || sketch.getNumberOfCells() == 0){
+			throw new RuntimeException("Cannot rank zero cells. Grid has possibly not been populated yet.");
+		}
+		LOG.info("Ranking polyhedra cells from the count sketch.");
+		int[] classes = sketch.getRiskClasses(new GridRanker(riskThresholds), pointsConsidered);
+		int firstBucket = sketch.getFirstBucket();
+		cells.clearRiskClasses();
+		for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+			cells.setRiskClass(cell, classes[sketch.getBucket(cells.getCount(cell)) - firstBucket]);
 		}
+		double bound = sketch.getMassErrorBound(riskThresholds, pointsConsidered);
 		
 		this.isRanked = true;
 		LOG.info("Done ranking polyhedra cells.");
-		LOG.info("A total of " + map.size() + " dodecahedra contains points (max value: " + maxValue + ")");
+		LOG.info(String.format("At most %.4f%% of the observations may be in the wrong risk class (relative accuracy %.2f%%).", 
+				100.0*bound, 100.0*sketch.getRelativeAccuracy()));
+		return bound;
 	}
 	
 	public void setRiskThresholds(List<Double> riskThresholds){
@@ -247,18 +848,52 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 	}
 
 	
+	/**
+	 * @return the colour of the (ranked) risk class, with classes above the
+	 * 		   highest colour sharing its colour.
+	 */
+	static Color getRiskColour(int riskClass){
+		return DIGI_RISK_COLOURS[Math.min(riskClass, DIGI_RISK_COLOURS.length - 1)];
+	}
+	
+	
+	/**
+	 * @return the colour as an opaque (A)RGB integer, e.g. for images.
+	 */
+	static int getRgb(Color color){
+		return 0xFF000000 
+				| Math.round(255*color.r) << 16 
+				| Math.round(255*color.g) << 8 
+				| Math.round(255*color.b);
+	}
+	
+	
 	public void setVisual(Visual visual){
 		this.visual = visual;
 	}
 	
 	
+	/**
+	 * Sets the level of detail of the {@link Visual#POLYHEDRA} view, as a 
+	 * multiple of the grid's scale (see {@link PolyhedraMesh}). The default
+	 * is 1, i.e. the grid's own cells.
+	 */
+	public void setPolyhedraCoarsening(int coarsening){
+		if(coarsening < 1){
+			throw new IllegalArgumentException("Cannot coarsen the grid by " + coarsening);
+		}
+		this.polyhedraCoarsening = coarsening;
+	}
+	
+	
 	/**
 	 * Currently four visualisations are supported:
 	 * <ul>
 	 * 	<li><b>NONE</b>: no visualisation;
 	 * 	<li><b>CENTROID</b>: only draws the centroids of each cell;
 	 * 	<li><b>SLICE</b>: takes a horizontal (xy) slice at a given z-value;
-	 * 	<li><b>POLYHEDRA</b>: draws all the dodecahedra.
+	 * 	<li><b>POLYHEDRA</b>: draws the boundaries of the risk classes, made 
+	 * 		up of the faces of the dodecahedra.
 	 * </ul>
 	 * 
 	 * @author jwjoubert
@@ -290,10 +925,11 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 	private void printCentroids(){
 		/* Cool, now let's plot the buggers. First as spheres. */
 		int index = 0;
-		Coord3d[] coords = new Coord3d[map.size()];
-		Color[] colors = new Color[map.size()];
-		for(Coord3d c : map.keySet()){
-			coords[index] = c;
+		int occupied = cells.getNumberOfOccupiedCells();
+		Coord3d[] coords = new Coord3d[occupied];
+		Color[] colors = new Color[occupied];
+		for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+			coords[index] = getCentroid(cell);
 			colors[index++] = new Color(0, 0, 0, 255);
 		}
 		Scatter scatter = new Scatter(coords, colors, 6f);
@@ -311,7 +947,6 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 			folder.mkdirs();
 		}
 		String snapshotFilename = snapshotfolder + (snapshotfolder.endsWith("/") ? "" : "/") + "polyhedra.csv";
-		BufferedWriter bw = IOUtils.getBufferedWriter(snapshotFilename);
 		
 		/* Set up the chart. */
 		chart = AWTChartComponentFactory.chart(Quality.Nicest, "awt");
@@ -342,95 +977,34 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 		);
 		chart.getView().updateBounds();
 		
+		/* Only the faces on the boundary of each risk class can be seen. */
+		PolyhedraMesh mesh = PolyhedraMesh.build(this, polyhedraCoarsening);
+		mesh.write(snapshotFilename);
 		
-		
-		/* Process the polygon faces. */
-		try{
-			bw.write("x,y,z,poly,class");
-			bw.newLine();
-			
-			/* Work your way through each grid cell. */
-			int polyCounter = 1;
-			for(Coord3d c : map.keySet()){
-				
-				/* Clean up a bit. There seems to be a few outliers... this is
-				 * for now where I take them out. */
-//				if(c.x > -1000 & c.z > 500){
-					
-					
-					/* Set up polyhedra shapes. */
-					ArrayList<org.jzy3d.plot3d.primitives.Polygon> body = new ArrayList<org.jzy3d.plot3d.primitives.Polygon>();
-					
-					/* Change colour based on rating zone. */
-					Color fillColor = null;
-					int zone = mapRating.get(c);
-					switch (zone) {
-					case 0:
-						fillColor = DIGI_GREEN;
-						break;
-					case 1:
-						fillColor = DIGI_YELLOW;
-						break;
-					case 2:
-						fillColor = DIGI_ORANGE;
-						break;
-					case 3:
-						fillColor = DIGI_RED;
-						break;
-					default:
-					}
-					if(fillColor == null){
-						LOG.error("Something wrong!!");
-					}
-					
-					/* TODO Change this as required. Limit faces to certain colours. */
-					int highestRiskZoneToDraw = 3;
-					if(zone <= highestRiskZoneToDraw){
-						/* Create faces. */
-						FCCPolyhedron poly = new FCCPolyhedron(c.x, c.y, c.z, scale);
-						for(NDPolygon face : poly.getFcPolyhedron()){
-							Quad q = new Quad();
-							for(GridPoint point : face.getPolyFace()){
-								double x = point.getX();
-								double y = point.getY();
-								double z = point.getZ();
-								
-								/* Add to 3D view. */
-								q.add(new Point(new Coord3d(point.getX(), point.getY(), point.getZ())));
-								
-								/* Write point to csv file. */
-								bw.write(String.format("%.2f,%.2f,%.2f,%d,%d\n", x, y, z, polyCounter, zone));
-							}
-							bw.write("NA,NA,NA,NA,NA");
-							bw.newLine();
-							
-							body.add((org.jzy3d.plot3d.primitives.Polygon)q);
-							polyCounter++;
-						}
-						
-						Shape shape = new Shape(body);
-						shape.setFaceDisplayed(true);
-						shape.setColor(fillColor);
-						shape.setFaceDisplayed(true);
-						shape.setWireframeColor(DIGI_GRAY);
-						chart.getScene().add(shape);
-					}
-//				}
-				
+		/* One shape per risk class. */
+		List<List<org.jzy3d.plot3d.primitives.Polygon>> bodies = new ArrayList<List<org.jzy3d.plot3d.primitives.Polygon>>();
+		for(int face = 0; face < mesh.getNumberOfFaces(); face++){
+			int zone = mesh.getRiskClass(face);
+			while(bodies.size() <= zone){
+				bodies.add(new ArrayList<org.jzy3d.plot3d.primitives.Polygon>());
 			}
-
-			chart.getView().shoot();
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Cannot write to " + snapshotFilename);
-		} finally{
-			try {
-				bw.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-				throw new RuntimeException("Cannot close " + snapshotFilename);
+			Quad q = new Quad();
+			for(int corner = 0; corner < 4; corner++){
+				q.add(new Point(new Coord3d(mesh.getCorner(face, corner, 0), mesh.getCorner(face, corner, 1), mesh.getCorner(face, corner, 2))));
 			}
+			bodies.get(zone).add(q);
 		}
+		for(int zone = 0; zone < bodies.size(); zone++){
+			if(bodies.get(zone).isEmpty()){
+				continue;
+			}
+			Shape shape = new Shape(bodies.get(zone));
+			shape.setFaceDisplayed(true);
+			shape.setColor(getRiskColour(zone));
+			shape.setWireframeColor(DIGI_GRAY);
+			chart.getScene().add(shape);
+		}
+		chart.getView().shoot();
 	}
 	
 	
@@ -479,11 +1053,12 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 			
 			/* Work your way through each grid cell. */
 			int polyCounter = 1;
-			for(Coord3d c : map.keySet()){
+			for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+				Coord3d c = getCentroid(cell);
 				
 				/* Change colour based on rating zone. */
 				Color fillColor = null;
-				int zone = mapRating.get(c);
+				int zone = cells.getRiskClass(cell);
 				switch (zone) {
 				case 0:
 					fillColor = DIGI_GREEN;
@@ -562,9 +1137,129 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 		}
 	}
 
+	/* Reads a snapshot, checking that it was written by the same kind of grid. */
+	private GridSnapshot readSnapshot(String filename){
+		GridSnapshot snapshot = GridSnapshot.read(filename);
+		if(!snapshot.gridType.equals(getClass().getSimpleName())){
+			throw new IllegalArgumentException("Snapshot " + filename + " is of a " + snapshot.gridType + ", not a " + getClass().getSimpleName());
+		}
+		if(snapshot.scale != scale){
+			LOG.error("Snapshot has scale " + snapshot.scale + ", not " + scale);
+			throw new IllegalArgumentException("Grid file " + filename + " does not match the scale " + scale);
+		}
+		return snapshot;
+	}
+	
+	
+	private void populateFromSnapshot(String filename){
+		LOG.info("Building grid from snapshot " + filename);
+		GridSnapshot snapshot = readSnapshot(filename);
+		setupEmptyGrid();
+		this.cells = snapshot.cells;
+		this.pointsConsidered = snapshot.pointsConsidered;
+		if(riskThresholds != null && !riskThresholds.equals(snapshot.riskThresholds)){
+			LOG.warn("Replacing the risk thresholds with those of the snapshot: " + snapshot.riskThresholds);
+		}
+		this.riskThresholds = snapshot.riskThresholds;
+		buildOcTree();
+		rebuildSketch();
+		
+		this.isPopulated = true;
+		this.isRanked = snapshot.isRanked;
+		LOG.info("Done building grid. A total of " + cells.size() + " dodecahedra contains points.");
+	}
+	
+	
+	/**
+	 * Adds the counts of partial grids, for example each populated from a 
+	 * single day's file, to this grid. Partial grids can so be built 
+	 * independently, in different processes or on different machines, and 
+	 * merged afterwards. The partial grids must be of the same type and scale.
+	 * Their risk classes are ignored, and this grid is no longer ranked, so 
+	 * rank the merged grid once with {@link #rankGridCells()}. 
+	 * 
+	 * <p>Once all the given grids are merged, the cells are renumbered in the
+	 * order of their {@link FCCLattice} keys, so the merged grid, and the 
+	 * ranking of cells with equal counts, does not depend on the order in 
+	 * which the partial grids were merged. Renumbering sorts and rehashes the
+	 * whole grid, so rather merge many partial grids in a single call. Counts
+	 * of whole records are added exactly. Fractional counts, i.e. when a 
+	 * kernel is used (see {@link #setKernelDensity(KdeType, double)}), may 
+	 * differ in the last digits when the partial grids are grouped 
+	 * differently.</p> 
+	 */
+	public void merge(DigiGrid3D... others){
+		for(DigiGrid3D other : others){
+			if(!getClass().equals(other.getClass())){
+				throw new IllegalArgumentException("Cannot merge a " + other.getClass().getSimpleName() + " into a " + getClass().getSimpleName());
+			}
+			if(other.scale != scale){
+				throw new IllegalArgumentException("Cannot merge a grid with scale " + other.scale + " into one with scale " + scale);
+			}
+			if(other.cells == null){
+				throw new IllegalArgumentException("Cannot merge a grid that has not been set up.");
+			}
+		}
+		for(DigiGrid3D other : others){
+			mergeCounts(other.cells, other.pointsConsidered);
+		}
+		finishMerge();
+	}
+	
+	
+	/**
+	 * Merges the partial grids in the given folders, each written with 
+	 * {@link #writeSnapshot(String)}, into this grid. Snapshots are read, and
+	 * merged, one at a time.
+	 * 
+	 * @see #merge(DigiGrid3D...)
+	 */
+	public void mergeFromGridFolder(String... folders){
+		for(String folder : folders){
+			String filename = folder + (folder.endsWith("/") ? "" : "/") + GridSnapshot.FILENAME;
+			LOG.info("Merging partial grid from snapshot " + filename);
+			GridSnapshot snapshot = readSnapshot(filename);
+			mergeCounts(snapshot.cells, snapshot.pointsConsidered);
+		}
+		finishMerge();
+	}
+	
+	
+	private void mergeCounts(FCCCellStore partial, double total){
+		if(cells == null){
+			setupEmptyGrid();
+		}
+		addCounts(partial, total);
+	}
+	
+	
+	/* Renumbers the cells once, after all the partial grids are merged. */
+	private void finishMerge(){
+		if(cells == null){
+			return;
+		}
+		cells.sortByKey();
+		cells.clearRiskClasses();
+		this.isRanked = false;
+	}
+	
+	
 	public boolean isRanked(){
 		return this.isRanked;
 	}
+
+
+	/**
+	 * Compiles the risk classes of the ranked grid into a dense
+	 * {@link RiskVoxelTable}, to classify many records when scoring. The
+	 * table must be compiled again if the grid is re-ranked.
+	 */
+	public RiskVoxelTable compileRiskTable(){
+		if(!isRanked){
+			throw new RuntimeException("Cannot compile the risk classes of a grid that has not been ranked.");
+		}
+		return new RiskVoxelTable(this);
+	}
 	
 	public boolean isPopulated(){
 		return this.isPopulated;
@@ -594,56 +1289,64 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 		this.sliceDepth = depth;
 	}
 	
+	/**
+	 * Writes a binary snapshot of the grid, called 
+	 * <code>cellValuesAndRiskClasses.bin</code>, to the output folder. It 
+	 * holds the same cells as <code>cellValuesAndRiskClasses.csv</code>, but 
+	 * also the scale and risk thresholds, and is much quicker to read again.
+	 * 
+	 * @see #populateFromGridFolder(String)
+	 */
+	public void writeSnapshot(String outputFolder){
+		if(cells == null || cells.getNumberOfOccupiedCells() == 0){
+			throw new RuntimeException("Insufficient data to write. Grid has possibly not been populated yet.");
+		}
+		String filename = outputFolder + (outputFolder.endsWith("/") ? "" : "/") + GridSnapshot.FILENAME;
+		LOG.info("Writing the grid snapshot to " + filename);
+		GridSnapshot snapshot = new GridSnapshot();
+		snapshot.gridType = getClass().getSimpleName();
+		snapshot.scale = scale;
+		snapshot.pointsConsidered = pointsConsidered;
+		snapshot.isRanked = isRanked;
+		snapshot.riskThresholds = riskThresholds;
+		snapshot.cells = cells;
+		snapshot.write(filename);
+		LOG.info("Done writing grid snapshot.");
+	}
+	
+	
+	/**
+	 * Reads the grid from the given folder, using the binary snapshot 
+	 * <code>cellValuesAndRiskClasses.bin</code> if it exists, and 
+	 * <code>cellValuesAndRiskClasses.csv</code> otherwise.
+	 */
+	public void populateFromGridFolder(String folder){
+		String prefix = folder + (folder.endsWith("/") ? "" : "/");
+		if(new File(prefix + GridSnapshot.FILENAME).exists()){
+			populateFromGridFile(prefix + GridSnapshot.FILENAME);
+		} else{
+			populateFromGridFile(prefix + "cellValuesAndRiskClasses.csv");
+		}
+	}
+	
+	
+	/**
+	 * Reads the grid from either a binary snapshot written with 
+	 * {@link #writeSnapshot(String)}, or the CSV file written with 
+	 * {@link #writeCellCountsAndRiskClasses(String)}.
+	 */
 	public void populateFromGridFile(String filename){
+		if(GridSnapshot.isSnapshot(filename)){
+			populateFromSnapshot(filename);
+			return;
+		}
 		LOG.info("Building grid from " + filename);
 		double maxValue = Double.NEGATIVE_INFINITY;
-
-		LOG.info("Calculating the data extent...");
-		double minX = Double.POSITIVE_INFINITY;
-		double minY = Double.POSITIVE_INFINITY;
-		double minZ = Double.POSITIVE_INFINITY;
-		double maxX = Double.NEGATIVE_INFINITY;
-		double maxY = Double.NEGATIVE_INFINITY;
-		double maxZ = Double.NEGATIVE_INFINITY;
+		setupEmptyGrid();
 		
+		/* Populate the grid in a single pass. */
 		Counter counter = new Counter("   lines # ");
 		BufferedReader br = IOUtils.getBufferedReader(filename);
-		try{
-			String line = br.readLine();
-			while( (line = br.readLine()) != null){
-				String[] sa = line.split(",");
-				double x = Double.parseDouble(sa[0]);
-				double y = Double.parseDouble(sa[1]);
-				double z = Double.parseDouble(sa[2]);
-				minX = Math.min(minX, x-2*scale);
-				minY = Math.min(minY, y-2*scale);
-				minZ = Math.min(minZ, z-2*scale);
-				maxX = Math.max(maxX, x+2*scale);
-				maxY = Math.max(maxY, y+2*scale);
-				maxZ = Math.max(maxZ, z+2*scale);
-				counter.incCounter();
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Cannot read from " + filename);
-		} finally{
-			try {
-				br.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-				throw new RuntimeException("Cannot close " + filename);
-			}
-		}
-		counter.printCounter();
-
-		/* Populate the grid. */
-		LOG.info("Building and populating the OcTree with dodecahedron centroids...");
-		map = new HashMap<Coord3d, Double>((int) counter.getCounter());
-		mapRating = new TreeMap<Coord3d, Integer>(getGridComparator());
-		ot = new OcTree<Coord3d>(minX, minY, minZ, maxX, maxY, maxZ);
-		
-		counter.reset();
-		br = IOUtils.getBufferedReader(filename);
 		try{
 			String line = br.readLine();
 			while( (line = br.readLine()) != null){
@@ -654,11 +1357,22 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 				double count = Double.parseDouble(sa[3]);
 				int riskClass = Integer.parseInt(sa[4]);
 				
+				/* The centroid must be on the lattice, otherwise the grid 
+				 * was most likely written with a different scale. */
+				long key = getCellKey(x, y, z);
+				if(key == FCCLattice.NO_KEY 
+						|| Math.abs(lattice.getKeyX(key) - x) > 0.01*scale
+						|| Math.abs(lattice.getKeyY(key) - y) > 0.01*scale
+						|| Math.abs(lattice.getKeyZ(key) - getGridZ(z)) > 0.01*scale){
+					LOG.error("Centroid (" + sa[0] + ";" + sa[1] + ";" + sa[2] + ") is not on the lattice with scale " + scale);
+					throw new IllegalArgumentException("Grid file " + filename + " does not match the scale " + scale);
+				}
+				
 				maxValue = Math.max(maxValue, count);
-				Coord3d c = new Coord3d(x, y, z);
-				ot.put(x, y,z, c);
-				map.put(c, count);
-				mapRating.put(c, riskClass);
+				int cell = cells.getOrCreateCell(key);
+				cells.setCount(cell, count);
+				cells.setRiskClass(cell, riskClass);
+				pointsConsidered += count;
 				
 				counter.incCounter();
 			}
@@ -674,11 +1388,13 @@ public abstract class DigiGrid3D extends AbstractAnalysis{
 			}
 		}
 		counter.printCounter();
+		buildOcTree();
+		rebuildSketch();
 		
 		LOG.info("Done building grid");
 		this.isPopulated = true;
 		this.isRanked = true;
 		
-		LOG.info("A total of " + map.size() + " dodecahedra contains points (max value: " + maxValue + ")");
+		LOG.info("A total of " + cells.getNumberOfOccupiedCells() + " dodecahedra contains points (max value: " + maxValue + ")");
 	}
 }
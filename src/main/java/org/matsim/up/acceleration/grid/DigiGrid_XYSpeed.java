@@ -19,15 +19,12 @@
 
 package org.matsim.up.acceleration.grid;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.HashMap;
 
 import org.apache.log4j.Logger;
 import org.jzy3d.maths.Coord3d;
 import org.matsim.core.utils.io.IOUtils;
-import org.matsim.core.utils.misc.Counter;
 
 /**
  * Class that acts as the container for the three-dimensional grid containing
@@ -54,71 +51,10 @@ public class DigiGrid_XYSpeed  extends DigiGrid3D {
 			throw new RuntimeException("First set thresholds with setRiskThresholds() method.");
 		}
 		
-		LOG.info("Calculating the data extent...");
-		double minX = Double.POSITIVE_INFINITY;
-		double minY = Double.POSITIVE_INFINITY;
-		double minSpeed = Double.POSITIVE_INFINITY;
-		double maxX = Double.NEGATIVE_INFINITY;
-		double maxY = Double.NEGATIVE_INFINITY;
-		double maxSpeed = Double.NEGATIVE_INFINITY;
-		
-		Counter counter = new Counter("   lines # ");
-		BufferedReader br = IOUtils.getBufferedReader(filename);
-		try{
-			String line = null;
-			while( (line = br.readLine()) != null){
-				String[] sa = line.split(",");
-				double x = Double.parseDouble(sa[5]);
-				double y = Double.parseDouble(sa[6]);
-				double speed = Double.parseDouble(sa[8])*speed_multiplier;
-				
-				minX = Math.min(minX, x);
-				minY = Math.min(minY, y);
-				minSpeed = Math.min(minSpeed, speed);
-				maxX = Math.max(maxX, x);
-				maxY = Math.max(maxY, y);
-				maxSpeed = Math.max(maxSpeed, speed);
-				counter.incCounter();
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Cannot read from " + filename);
-		} finally{
-			try {
-				br.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-				throw new RuntimeException("Cannot close " + filename);
-			}
-		}
-		counter.printCounter();
-
-		/* Establish the centroid grid given the point extent. */
-		FCCGrid fccg = new FCCGrid(minX, maxX, minY, maxY, minSpeed, maxSpeed, super.getScale());
-		GridPoint[] ga = fccg.getFcGrid();
-		for(GridPoint gp : ga){
-			minX = Math.min(minX, gp.getX());
-			minY = Math.min(minY, gp.getY());
-			minSpeed = Math.min(minSpeed, gp.getZ());
-			maxX = Math.max(maxX, gp.getX());
-			maxY = Math.max(maxY, gp.getY());
-			maxSpeed = Math.max(maxSpeed, gp.getZ());
-		}
-		LOG.info("Done calculating data extent.");
-
-		/* Establish and populate the OcTree given the centroid extent. */
-		LOG.info("Building OcTree with dodecahedron centroids... (" + ga.length + " centroids)");
-		Counter centroidCounter = new Counter("   centroid # "); 
-		super.map = new HashMap<Coord3d, Double>(ga.length);
-		super.ot = new OcTree<Coord3d>(minX, minY, minSpeed, maxX, maxY, maxSpeed);
-		for(GridPoint gp : ga){
-			Coord3d c = new Coord3d(gp.getX(), gp.getY(), gp.getZ());
-			ot.put(gp.getX(), gp.getY(), gp.getZ(), c);
-			map.put(c, 0.0);
-			centroidCounter.incCounter();
-		}
-		centroidCounter.printCounter();
-		LOG.info("Done populating centroid grid: " + ga.length + " points.");
+		/* The grid grows as records are added, so the data extent need not 
+		 * be known, and the file is only read once it is populated. */
+		LOG.info("Setting up an empty grid for " + filename);
+		setupEmptyGrid();
 	}
 
 
@@ -129,14 +65,26 @@ public class DigiGrid_XYSpeed  extends DigiGrid3D {
 
 
 	@Override
-	public Coord3d getClosest(double x, double y, double z) {
-		return this.ot.get(x, y, z*speed_multiplier);
+	protected double getGridZ(double z) {
+		return z*speed_multiplier;
+	}
+
+
+	@Override
+	protected int[] getRecordColumns() {
+		return new int[]{5, 6, 8};
+	}
+
+
+	@Override
+	protected boolean hasInputHeader() {
+		return false;
 	}
 	
 	
 	@Override
 	public void writeCellCountsAndRiskClasses(String outputFolder) {
-		if(map.size() == 0 || mapRating == null){
+		if(cells == null || cells.getNumberOfOccupiedCells() == 0 || !isRanked()){
 			throw new RuntimeException("Insufficient data to write. Either no grids, or no ranking.");
 		}
 		String filename = outputFolder + (outputFolder.endsWith("/") ? "" : "/") + "cellValuesAndRiskClasses.csv";
@@ -155,8 +103,10 @@ public class DigiGrid_XYSpeed  extends DigiGrid3D {
 			bw.write("x,y,speed,count,class");
 			bw.newLine();
 			
-			for(Coord3d c : this.map.keySet()){
-				bw.write(String.format("%.4f, %.4f,%.4f,%.1f,%d\n", c.x, c.y, c.z/speed_multiplier, this.map.get(c), this.mapRating.get(c)));
+			for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+				bw.write(String.format("%.4f, %.4f,%.4f,%.1f,%d\n", 
+						getCellX(cell), getCellY(cell), getCellZ(cell)/speed_multiplier, 
+						cells.getCount(cell), cells.getRiskClass(cell)));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -170,6 +120,8 @@ public class DigiGrid_XYSpeed  extends DigiGrid3D {
 			}
 		}
 		LOG.info("Done writing cell values and risk classes.");
+		
+		writeSnapshot(outputFolder);
 	}
 
 	
@@ -19,15 +19,12 @@
 
 package org.matsim.up.acceleration.grid;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.HashMap;
 
 import org.apache.log4j.Logger;
 import org.jzy3d.maths.Coord3d;
 import org.matsim.core.utils.io.IOUtils;
-import org.matsim.core.utils.misc.Counter;
 
 /**
  * Class that implements the container for the three-dimensional grid 
@@ -82,74 +79,10 @@ public class DigiGrid_XYZ extends DigiGrid3D{
 			throw new RuntimeException("First set thresholds with setRiskThresholds() method.");
 		}
 	
-		LOG.info("Calculating the data extent...");
-		double minX = Double.POSITIVE_INFINITY;
-		double minY = Double.POSITIVE_INFINITY;
-		double minZ = Double.POSITIVE_INFINITY;
-		double maxX = Double.NEGATIVE_INFINITY;
-		double maxY = Double.NEGATIVE_INFINITY;
-		double maxZ = Double.NEGATIVE_INFINITY;
-
-		Counter counter = new Counter("   lines # ");
-		BufferedReader br = IOUtils.getBufferedReader(filename);
-		try{
-			/* Ignore the header if present. */
-			String line = null;
-			if(INPUT_HAS_HEADER) {
-				line = br.readLine();
-			}
-			while( (line = br.readLine()) != null){
-				String[] sa = line.split(",");
-				double x = Double.parseDouble(sa[COLUMN_X_ACCELERATION]);
-				double y = Double.parseDouble(sa[COLUMN_Y_ACCELERATION]);
-				double z = Double.parseDouble(sa[COLUMN_Z_ACCELERATION]);
-				minX = Math.min(minX, x);
-				minY = Math.min(minY, y);
-				minZ = Math.min(minZ, z);
-				maxX = Math.max(maxX, x);
-				maxY = Math.max(maxY, y);
-				maxZ = Math.max(maxZ, z);
-				counter.incCounter();
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
-			throw new RuntimeException("Cannot read from " + filename);
-		} finally{
-			try {
-				br.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-				throw new RuntimeException("Cannot close " + filename);
-			}
-		}
-		counter.printCounter();
-
-		/* Establish the centroid grid given the point extent. */
-		FCCGrid fccg = new FCCGrid(minX, maxX, minY, maxY, minZ, maxZ, scale);
-		GridPoint[] ga = fccg.getFcGrid();
-		for(GridPoint gp : ga){
-			minX = Math.min(minX, gp.getX());
-			minY = Math.min(minY, gp.getY());
-			minZ = Math.min(minZ, gp.getZ());
-			maxX = Math.max(maxX, gp.getX());
-			maxY = Math.max(maxY, gp.getY());
-			maxZ = Math.max(maxZ, gp.getZ());
-		}
-		LOG.info("Done calculating data extent.");
-
-		/* Establish and populate the OcTree given the centroid extent. */
-		LOG.info("Building OcTree with dodecahedron centroids... (" + ga.length + " centroids)");
-		Counter centroidCounter = new Counter("   centroid # "); 
-		map = new HashMap<Coord3d, Double>(ga.length);
-		ot = new OcTree<Coord3d>(minX, minY, minZ, maxX, maxY, maxZ);
-		for(GridPoint gp : ga){
-			Coord3d c = convertToCoord3d(gp.getX(), gp.getY(), gp.getZ());
-			ot.put(gp.getX(), gp.getY(), gp.getZ(), c);
-			map.put(c, new Double(0.0));
-			centroidCounter.incCounter();
-		}
-		centroidCounter.printCounter();
-		LOG.info("Done populating centroid grid: " + ga.length + " points.");
+		/* The grid grows as records are added, so the data extent need not 
+		 * be known, and the file is only read once it is populated. */
+		LOG.info("Setting up an empty grid for " + filename);
+		setupEmptyGrid();
 	}
 	
 
@@ -160,20 +93,27 @@ public class DigiGrid_XYZ extends DigiGrid3D{
 
 
 	@Override
-	public Coord3d getClosest(double x, double y, double z){
-		return this.ot.get(x, y, z);
+	protected int[] getRecordColumns() {
+		return new int[]{COLUMN_X_ACCELERATION, COLUMN_Y_ACCELERATION, COLUMN_Z_ACCELERATION};
+	}
+
+
+	@Override
+	protected boolean hasInputHeader() {
+		return this.INPUT_HAS_HEADER;
 	}
 
 	/**
 	 * Writes the accelerometer 'blob' results: the number of observations in
 	 * each cell (only those with a value greater than zero), and the risk class
 	 * of the cell. The output file with name <code>cellValuesAndRiskClasses.csv</code>
-	 * will be created in the output folder.
+	 * will be created in the output folder, together with its binary snapshot
+	 * <code>cellValuesAndRiskClasses.bin</code> (see {@link #writeSnapshot(String)}).
 	 * 
 	 * @param outputFolder
 	 */
 	public void writeCellCountsAndRiskClasses(String outputFolder){
-		if(map.size() == 0 || mapRating == null){
+		if(cells == null || cells.getNumberOfOccupiedCells() == 0 || !isRanked()){
 			throw new RuntimeException("Insufficient data to write. Either no grids, or no ranking.");
 		}
 		String filename = outputFolder + (outputFolder.endsWith("/") ? "" : "/") + "cellValuesAndRiskClasses.csv";
@@ -192,8 +132,10 @@ public class DigiGrid_XYZ extends DigiGrid3D{
 			bw.write("x,y,z,count,class");
 			bw.newLine();
 			
-			for(Coord3d c : this.map.keySet()){
-				bw.write(String.format("%.4f, %.4f,%.4f,%.1f,%d\n", c.x, c.y, c.z, this.map.get(c), this.mapRating.get(c)));
+			for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+				bw.write(String.format("%.4f, %.4f,%.4f,%.1f,%d\n", 
+						getCellX(cell), getCellY(cell), getCellZ(cell), 
+						cells.getCount(cell), cells.getRiskClass(cell)));
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -207,6 +149,8 @@ public class DigiGrid_XYZ extends DigiGrid3D{
 			}
 		}
 		LOG.info("Done writing cell values and risk classes.");
+		
+		writeSnapshot(outputFolder);
 	}
 
 
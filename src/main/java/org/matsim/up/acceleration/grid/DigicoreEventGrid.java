@@ -22,6 +22,9 @@ import java.util.Map;
 import java.util.TreeMap;
 
 import org.apache.log4j.Logger;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.up.acceleration.DigicoreRecordReader;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
 import org.matsim.up.acceleration.scoring.DIGICORE_EVENT;
 
 
@@ -36,6 +39,10 @@ import org.matsim.up.acceleration.scoring.DIGICORE_EVENT;
 public class DigicoreEventGrid extends DigiGrid {
 	final private static Logger LOG = Logger.getLogger(DigicoreEventGrid.class);
 	
+	private final static int COLUMN_EVENT = 2;
+	/* The reader is not changed by reading, so all grids share it. */
+	private final static DigicoreRecordReader EVENT_READER = new DigicoreRecordReader(COLUMN_EVENT);
+	
 	double pointsConsidered = 0.0;
 
 	/* Specific risk space objects. */
@@ -61,9 +68,60 @@ public class DigicoreEventGrid extends DigiGrid {
 		LOG.info("Done ranking grid cells.");
 	}
 	
+	/**
+	 * Counts the event of a single record. When counting many records, rather
+	 * use {@link #incrementCell(String, double[])} with the same value array.
+	 */
 	public void incrementCell(String record){
-		String[] sa = record.split(",");
-		DIGICORE_EVENT event = DIGICORE_EVENT.getEvent(Integer.parseInt(sa[2]));
+		incrementCell(record, new double[1]);
+	}
+	
+	
+	/**
+	 * Counts the event of a single record, parsing only the event column.
+	 * 
+	 * @param values an array, local to the caller's loop, into which the event
+	 * 		  is parsed. It must have at least one element.
+	 */
+	public void incrementCell(String record, double[] values){
+		EVENT_READER.parse(record, values);
+		incrementCell(getEventId(values[0]));
+	}
+	
+	
+	/**
+	 * Counts the events of all the records in the given file, parsing only
+	 * the event column.
+	 */
+	public void incrementCells(String filename){
+		LOG.info("Counting events in " + filename + "...");
+		final Counter counter = new Counter("   lines # ");
+		EVENT_READER.read(filename, new RecordHandler() {
+			@Override
+			public void handleRecord(double[] values) {
+				incrementCell(getEventId(values[0]));
+				counter.incCounter();
+			}
+		});
+		counter.printCounter();
+		LOG.info("Done counting events.");
+	}
+	
+	
+	/**
+	 * @throws IllegalArgumentException if the parsed event is not a whole 
+	 * 		   number, rather than truncating it to another event.
+	 */
+	static int getEventId(double value){
+		if(value != Math.rint(value) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Cannot count event " + value + ": events must be whole numbers.");
+		}
+		return (int) value;
+	}
+	
+	
+	private void incrementCell(int eventId){
+		DIGICORE_EVENT event = DIGICORE_EVENT.getEvent(eventId);
 		if(!countMap.containsKey(event)){
 			countMap.put(event, 1);
 		} else{
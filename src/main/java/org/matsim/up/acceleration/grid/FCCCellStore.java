@@ -0,0 +1,264 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+
+/**
+ * Primitive storage for the observation count and risk class of each cell
+ * (dodecahedron) in a {@link DigiGrid3D}. The store is sparse: a cell is only
+ * created the first time it is needed, and is identified by its
+ * {@link FCCLattice} key. Cells are numbered from zero in the order in which
+ * they are created, and the cell number is used to address the count and
+ * risk class arrays, so no centroid objects are needed to count or rank
+ * observations. The arrays, and the open-addressing table that maps keys to
+ * cells, grow as required.
+ *
+ * <p>Any non-negative key will do, so the store also holds the hexagons of a
+ * {@link DigiGrid2D}, keyed by their {@link HexLattice} keys.</p>
+ *
+ * @author jwjoubert
+ */
+public class FCCCellStore {
+	/** The risk class of a cell that has not been ranked (yet). */
+	public final static int UNRATED = -1;
+	private final static int DEFAULT_CAPACITY = 1024;
+
+	private long[] keys;
+	private double[] counts;
+	private byte[] riskClasses;
+	private int size = 0;
+
+	/* Open-addressing table with linear probing, holding cell+1 (0 is empty). */
+	private int[] table;
+	private int mask;
+
+	public FCCCellStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+
+	public FCCCellStore(int expectedCells) {
+		int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, expectedCells)) << 1);
+		this.keys = new long[capacity];
+		this.counts = new double[capacity];
+		this.riskClasses = new byte[capacity];
+		Arrays.fill(this.riskClasses, (byte) UNRATED);
+		this.table = new int[capacity << 1];
+		this.mask = this.table.length - 1;
+	}
+
+
+	/**
+	 * @return the number of cells created so far.
+	 */
+	public int size(){
+		return this.size;
+	}
+
+
+	/**
+	 * @return the cell with the given {@link FCCLattice} key, or -1 if no such
+	 * 		   cell has been created.
+	 */
+	public int getCell(long key){
+		if(key == FCCLattice.NO_KEY){
+			return -1;
+		}
+		int slot = hash(key) & mask;
+		int entry;
+		while((entry = table[slot]) != 0){
+			if(keys[entry - 1] == key){
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+
+	/**
+	 * @return the cell with the given {@link FCCLattice} key, creating it
+	 * 		   (with a zero count) if it does not exist yet.
+	 */
+	public int getOrCreateCell(long key){
+		if(key == FCCLattice.NO_KEY){
+			throw new IllegalArgumentException("Cannot create a cell without a lattice key.");
+		}
+		int slot = hash(key) & mask;
+		int entry;
+		while((entry = table[slot]) != 0){
+			if(keys[entry - 1] == key){
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if(size == keys.length){
+			grow();
+			return getOrCreateCell(key);
+		}
+		int cell = size++;
+		keys[cell] = key;
+		table[slot] = cell + 1;
+		return cell;
+	}
+
+
+	public long getKey(int cell){
+		return this.keys[cell];
+	}
+
+
+	public double getCount(int cell){
+		return this.counts[cell];
+	}
+
+
+	public void setCount(int cell, double count){
+		this.counts[cell] = count;
+	}
+
+
+	public void incrementCount(int cell, double weight){
+		this.counts[cell] += weight;
+	}
+
+
+	/**
+	 * @return the risk class of the cell, or {@link #UNRATED}.
+	 */
+	public int getRiskClass(int cell){
+		return this.riskClasses[cell];
+	}
+
+
+	public void setRiskClass(int cell, int riskClass){
+		if(riskClass < UNRATED || riskClass > Byte.MAX_VALUE){
+			throw new IllegalArgumentException("Cannot store risk class " + riskClass);
+		}
+		this.riskClasses[cell] = (byte) riskClass;
+	}
+
+
+	public void clearRiskClasses(){
+		Arrays.fill(this.riskClasses, (byte) UNRATED);
+	}
+
+
+	/**
+	 * Adds the counts of another store to this one, matching cells on their
+	 * {@link FCCLattice} keys and creating cells where necessary. Risk
+	 * classes are not copied.
+	 */
+	public void add(FCCCellStore other){
+		for(int cell = 0; cell < other.size; cell++){
+			incrementCount(getOrCreateCell(other.keys[cell]), other.counts[cell]);
+		}
+	}
+
+
+	/**
+	 * Renumbers the cells in increasing order of their {@link FCCLattice}
+	 * keys, so that the numbering only depends on which cells exist, and not
+	 * on the order in which they were created. Counts and risk classes move
+	 * with their cells. Cell numbers obtained before the call are invalid.
+	 */
+	public void sortByKey(){
+		long[] sortedKeys = Arrays.copyOf(keys, size);
+		Arrays.sort(sortedKeys);
+		double[] sortedCounts = new double[keys.length];
+		byte[] sortedClasses = new byte[keys.length];
+		Arrays.fill(sortedClasses, (byte) UNRATED);
+		for(int cell = 0; cell < size; cell++){
+			int oldCell = getCell(sortedKeys[cell]);
+			sortedCounts[cell] = counts[oldCell];
+			sortedClasses[cell] = riskClasses[oldCell];
+		}
+		System.arraycopy(sortedKeys, 0, keys, 0, size);
+		counts = sortedCounts;
+		riskClasses = sortedClasses;
+
+		Arrays.fill(table, 0);
+		rehash();
+	}
+
+
+	/**
+	 * Finds the next cell, from (and including) the given index, that has at
+	 * least one observation. Typical use:
+	 * <pre>
+	 * for(int cell = store.nextOccupiedCell(0); cell >= 0; cell = store.nextOccupiedCell(cell+1)){ ... }
+	 * </pre>
+	 *
+	 * @return the cell index, or -1 if there are no more occupied cells.
+	 */
+	public int nextOccupiedCell(int fromIndex){
+		for(int cell = fromIndex; cell < this.size; cell++){
+			if(this.counts[cell] > 0.0){
+				return cell;
+			}
+		}
+		return -1;
+	}
+
+
+	public int getNumberOfOccupiedCells(){
+		int occupied = 0;
+		for(int cell = 0; cell < this.size; cell++){
+			if(this.counts[cell] > 0.0){
+				occupied++;
+			}
+		}
+		return occupied;
+	}
+
+
+	private void grow(){
+		int capacity = keys.length << 1;
+		keys = Arrays.copyOf(keys, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		int oldLength = riskClasses.length;
+		riskClasses = Arrays.copyOf(riskClasses, capacity);
+		Arrays.fill(riskClasses, oldLength, capacity, (byte) UNRATED);
+
+		table = new int[capacity << 1];
+		mask = table.length - 1;
+		rehash();
+	}
+
+
+	private void rehash(){
+		for(int cell = 0; cell < size; cell++){
+			int slot = hash(keys[cell]) & mask;
+			while(table[slot] != 0){
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = cell + 1;
+		}
+	}
+
+
+	/* Spread the packed coordinates over all the bits (Fibonacci hashing). */
+	private static int hash(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+}
@@ -4,16 +4,27 @@ package org.matsim.up.acceleration.grid;
 
 
 
+/**
+ * The face-centred cubic grid of polyhedra centroids for a given extent. The
+ * centroids are only available as {@link GridPoint}s once 
+ * {@link #getFcGrid()} is called, since at fine scales there are far too 
+ * many of them to hold on the heap. Individual centroids are computed on 
+ * demand, from their index, by the grid's {@link FCCLattice}.
+ */
 public class FCCGrid {
 
 	// Data Members
-	private GridPoint[] FcGrid;
+	private GridPoint[] FcGrid = null;
 	private int NX,  NY,  NZ, NGrid;
+	private double dX0, dY0, dZ0, dScale;
+	private final FCCLattice lattice;
 
 	//Constructor
 	public FCCGrid(double dXmin, double dXmax, double dYmin, double dYmax, double dZmin, double dZmax, double dScale ) {
 
-		double dX0, dX1, dY0, dY1, dZ0, dZ1;
+		double dX1, dY1, dZ1;
+		this.dScale = dScale;
+		this.lattice = new FCCLattice(dXmin, dXmax, dYmin, dYmax, dZmin, dZmax, dScale);
 		
 		// Determine grid consistent boundaries
 		double dsXmin = dXmin / (2*dScale);
@@ -71,15 +82,19 @@ public class FCCGrid {
 		NX = (int) (dX1-dX0+1);
 		NY = (int) (dY1-dY0+1);
 		NZ = (int) (dZ1-dZ0+1);
-		NGrid = NX*NY*NZ;
-		
+		NGrid = NX*NY*NZ*4;
+	}
+	
+	// Generates all the centroids, only when they are first asked for
+	private void generateGrid( ) {
+		int NGrid = this.NGrid / 4;
 		FcGrid = new GridPoint[NGrid*4];
 		
 		// Generate the basic grid
 		int nCount = 0;
-		for (int k = (int)dZ0; k<= (int)dZ1; k++) {
-			for (int j = (int)dY0; j<= (int)dY1; j++) {
-				for (int i = (int)dX0; i<= (int)dX1; i++) {
+		for (int k = (int)dZ0; k< (int)dZ0 + NZ; k++) {
+			for (int j = (int)dY0; j< (int)dY0 + NY; j++) {
+				for (int i = (int)dX0; i< (int)dX0 + NX; i++) {
 					FcGrid[nCount] = new GridPoint((double)i*2, (double)j*2, (double)k*2);					
 					nCount++;
 				}
@@ -112,11 +127,43 @@ public class FCCGrid {
 		// Rotate the grid.  Add later
 	}
 
- //Returns FcGrid
+ //Returns FcGrid, generating all the centroids on the first call
 	public GridPoint[] getFcGrid( ) {
+		if (FcGrid == null)
+			generateGrid();
 		return FcGrid;
 	}
 	
+ //Returns the centroid of cell nIndex, without generating the grid
+	public GridPoint getGridPoint(int nIndex) {
+		return new GridPoint(getX(nIndex), getY(nIndex), getZ(nIndex));
+	}
+	
+ //Returns the x-value of the centroid of cell nIndex
+	public double getX(int nIndex) {
+		return lattice.getX(nIndex);
+	}
+	
+ //Returns the y-value of the centroid of cell nIndex
+	public double getY(int nIndex) {
+		return lattice.getY(nIndex);
+	}
+	
+ //Returns the z-value of the centroid of cell nIndex
+	public double getZ(int nIndex) {
+		return lattice.getZ(nIndex);
+	}
+	
+ //Returns the index of the cell containing (x, y, z), or -1 if outside the grid
+	public int getCellIndex(double x, double y, double z) {
+		return lattice.getCellIndex(x, y, z);
+	}
+	
+ //Returns the lattice
+	public FCCLattice getLattice( ) {
+		return lattice;
+	}
+	
  //Returns nX
 	public int getNX( ) {
 		return NX;
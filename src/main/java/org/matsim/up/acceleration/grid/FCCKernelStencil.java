@@ -0,0 +1,153 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import org.matsim.up.utils.grid.KernelDensityEstimator;
+import org.matsim.up.utils.grid.KernelDensityEstimator.KdeType;
+
+/**
+ * The kernel of a three-dimensional kernel density estimate on the
+ * {@link FCCLattice}. Every lattice point looks the same, so the offsets
+ * (in units of the scale) of all the neighbouring dodecahedra within the
+ * kernel's reach, and their normalised weights, are computed only once. A
+ * record is then spread over the neighbours of the cell containing it
+ * without any search, and at the cost of one key and one count update per
+ * neighbour.
+ *
+ * <p>The weights use the same kernel functions as the two-dimensional
+ * {@link KernelDensityEstimator}, evaluated at the distance between
+ * centroids, and sum to one.</p>
+ *
+ * @author jwjoubert
+ */
+class FCCKernelStencil {
+	private final KdeType kdeType;
+	private final double radius;
+	private final long[] offsetA;
+	private final long[] offsetB;
+	private final long[] offsetC;
+	private final double[] weights;
+
+
+	FCCKernelStencil(double scale, KdeType kdeType, double radius) {
+		/* The closest neighbouring centroids are sqrt(2) scale units apart. */
+		double neighbourDistance = Math.sqrt(2.0)*scale;
+		if(radius <= neighbourDistance && kdeType != KdeType.CELL){
+			throw new IllegalArgumentException("The radius " + radius + " does not reach the neighbouring cells at "
+					+ neighbourDistance + ". Increase the radius, or use KdeType.CELL");
+		}
+		this.kdeType = kdeType;
+		this.radius = radius;
+
+		/* The same search radii as the two-dimensional estimator. */
+		double usedRadius;
+		switch (kdeType) {
+		case CELL:
+			usedRadius = 0.0;
+			break;
+		case GAUSSIAN:
+			usedRadius = 3.0*radius;
+			break;
+		default:
+			usedRadius = radius;
+			break;
+		}
+
+		int reach = (int) Math.floor(usedRadius / scale);
+		int capacity = (2*reach + 1)*(2*reach + 1)*(2*reach + 1);
+		long[] a = new long[capacity];
+		long[] b = new long[capacity];
+		long[] c = new long[capacity];
+		double[] w = new double[capacity];
+		int size = 0;
+		double sum = 0.0;
+		for(int i = -reach; i <= reach; i++){
+			for(int j = -reach; j <= reach; j++){
+				for(int k = -reach; k <= reach; k++){
+					if(((i + j + k) & 1) != 0){
+						continue;
+					}
+					double distance = Math.sqrt(i*i + j*j + k*k)*scale;
+					if(distance > usedRadius){
+						continue;
+					}
+					double weight = KernelDensityEstimator.getFunctionFromDistance(kdeType, radius, distance);
+					if(weight > 0.0){
+						a[size] = i;
+						b[size] = j;
+						c[size] = k;
+						w[size++] = weight;
+						sum += weight;
+					}
+				}
+			}
+		}
+
+		this.offsetA = new long[size];
+		this.offsetB = new long[size];
+		this.offsetC = new long[size];
+		this.weights = new double[size];
+		for(int i = 0; i < size; i++){
+			offsetA[i] = a[i];
+			offsetB[i] = b[i];
+			offsetC[i] = c[i];
+			weights[i] = w[i] / sum;
+		}
+	}
+
+
+	/**
+	 * @return the number of cells a record is spread over.
+	 */
+	int size(){
+		return this.weights.length;
+	}
+
+
+	/**
+	 * @return the key of the i'th neighbour of the given cell, or
+	 * 		   {@link FCCLattice#NO_KEY} if it is not on the lattice.
+	 */
+	long getNeighbourKey(long key, int i){
+		return FCCLattice.packKey(
+				FCCLattice.getKeyA(key) + offsetA[i],
+				FCCLattice.getKeyB(key) + offsetB[i],
+				FCCLattice.getKeyC(key) + offsetC[i]);
+	}
+
+
+	/**
+	 * @return the share of a record that goes to the i'th neighbour.
+	 */
+	double getWeight(int i){
+		return this.weights[i];
+	}
+
+
+	KdeType getKdeType(){
+		return this.kdeType;
+	}
+
+
+	double getRadius(){
+		return this.radius;
+	}
+
+}
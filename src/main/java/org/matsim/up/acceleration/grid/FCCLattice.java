@@ -0,0 +1,253 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+/**
+ * Closed-form locator for the face-centred cubic (FCC) lattice generated by
+ * {@link FCCGrid}. Once divided by the scale, the FCC centroids are exactly
+ * the integer points (a, b, c) with an even sum a+b+c. The rhombic
+ * dodecahedron containing a point is therefore found by rounding each
+ * coordinate, and, if the sum of the rounded values is odd, rounding the
+ * coordinate with the largest error the other way. No tree is searched and
+ * no object is created.
+ *
+ * <p>Every lattice point has a unique key, packing its integer coordinates
+ * (a, b, c), so that a grid can grow wherever records fall without knowing
+ * its extent in advance. If the lattice is bounded by an extent, the cells
+ * are also indexed in exactly the same order in which {@link FCCGrid}
+ * generates its centroids, i.e. the index of a cell is its position in
+ * {@link FCCGrid#getFcGrid()} for the same extent and scale.</p>
+ *
+ * @author jwjoubert
+ */
+public class FCCLattice {
+	/** The key returned for a point that is too far from the origin to be packed. */
+	public final static long NO_KEY = -1L;
+	final static int KEY_BITS = 21;
+	private final static long KEY_MASK = (1L << KEY_BITS) - 1L;
+	private final static long KEY_OFFSET = 1L << (KEY_BITS - 1);
+
+	/* Sub-lattice (FCCGrid translation vector) from the parity of (a, b, c),
+	 * packed as (a&1)<<2 | (b&1)<<1 | (c&1). Odd sums are not on the lattice. */
+	private final static int[] SUBLATTICE = {0, -1, -1, 2, -1, 3, 1, -1};
+	private final static int[] OFFSET_X = {0, 1, 0, 1};
+	private final static int[] OFFSET_Y = {0, 1, 1, 0};
+	private final static int[] OFFSET_Z = {0, 0, 1, 1};
+
+	private final double scale;
+	private final double inverseScale;
+	private final int x0, y0, z0;
+	private final int nX, nY, nZ;
+	private final int nGrid;
+
+	/**
+	 * Creates an unbounded lattice. Only the key-based methods are of use,
+	 * since there is no extent to index cells in.
+	 */
+	public FCCLattice(double scale) {
+		this.scale = scale;
+		this.inverseScale = 1.0 / scale;
+		this.x0 = 0;
+		this.y0 = 0;
+		this.z0 = 0;
+		this.nX = 0;
+		this.nY = 0;
+		this.nZ = 0;
+		this.nGrid = 0;
+	}
+
+
+	/**
+	 * Creates the lattice for the same extent, and with the same boundary
+	 * rounding, as {@link FCCGrid#FCCGrid(double, double, double, double, double, double, double)}.
+	 */
+	public FCCLattice(double minX, double maxX, double minY, double maxY, double minZ, double maxZ, double scale) {
+		this.scale = scale;
+		this.inverseScale = 1.0 / scale;
+		this.x0 = getBoundary(minX / (2*scale));
+		this.y0 = getBoundary(minY / (2*scale));
+		this.z0 = getBoundary(minZ / (2*scale));
+		this.nX = getBoundary(maxX / (2*scale)) - x0 + 1;
+		this.nY = getBoundary(maxY / (2*scale)) - y0 + 1;
+		this.nZ = getBoundary(maxZ / (2*scale)) - z0 + 1;
+		this.nGrid = nX*nY*nZ;
+	}
+
+
+	/* Same rounding as FCCGrid: towards zero from the half-unit. */
+	private static int getBoundary(double d){
+		if(d < 0d){
+			return (int) Math.rint(d + 0.5d);
+		} else if(d > 0d){
+			return (int) Math.rint(d - 0.5d);
+		} else{
+			return 0;
+		}
+	}
+
+
+	/**
+	 * Finds the cell whose centroid is closest to the given point.
+	 *
+	 * @return the cell index, or -1 if the closest lattice point falls
+	 * 		   outside the extent of the grid. In the latter case the closest
+	 * 		   centroid <i>inside</i> the grid has to be found some other way,
+	 * 		   for example with an {@link OcTree}.
+	 */
+	public int getCellIndex(double x, double y, double z){
+		long key = getCellKey(x, y, z);
+		if(key == NO_KEY){
+			return -1;
+		}
+		return getCellIndex(getKeyA(key), getKeyB(key), getKeyC(key));
+	}
+
+
+	/**
+	 * Finds the key of the lattice point closest to the given point. Keys are
+	 * independent of any extent, and unique for lattices with the same scale.
+	 *
+	 * @return the key, or {@link #NO_KEY} if the point is more than a million
+	 * 		   scale units from the origin in any dimension.
+	 */
+	public long getCellKey(double x, double y, double z){
+		double u = x*inverseScale;
+		double v = y*inverseScale;
+		double w = z*inverseScale;
+		/* Also catches NaN values. */
+		if(!(Math.abs(u) < KEY_OFFSET - 1 && Math.abs(v) < KEY_OFFSET - 1 && Math.abs(w) < KEY_OFFSET - 1)){
+			return NO_KEY;
+		}
+		double a = Math.rint(u);
+		double b = Math.rint(v);
+		double c = Math.rint(w);
+
+		/* Not on the lattice: re-round the worst coordinate the other way. */
+		if(((long) a + (long) b + (long) c & 1L) != 0L){
+			double du = u - a;
+			double dv = v - b;
+			double dw = w - c;
+			double absU = Math.abs(du);
+			double absV = Math.abs(dv);
+			double absW = Math.abs(dw);
+			if(absU >= absV && absU >= absW){
+				a += du < 0.0 ? -1.0 : 1.0;
+			} else if(absV >= absW){
+				b += dv < 0.0 ? -1.0 : 1.0;
+			} else{
+				c += dw < 0.0 ? -1.0 : 1.0;
+			}
+		}
+		return packKey((long) a, (long) b, (long) c);
+	}
+
+
+	static long packKey(long a, long b, long c){
+		if(a < -KEY_OFFSET || a >= KEY_OFFSET 
+				|| b < -KEY_OFFSET || b >= KEY_OFFSET 
+				|| c < -KEY_OFFSET || c >= KEY_OFFSET){
+			return NO_KEY;
+		}
+		return (a + KEY_OFFSET) << (2*KEY_BITS) | (b + KEY_OFFSET) << KEY_BITS | (c + KEY_OFFSET);
+	}
+
+
+	static long getKeyA(long key){
+		return (key >>> (2*KEY_BITS) & KEY_MASK) - KEY_OFFSET;
+	}
+
+
+	static long getKeyB(long key){
+		return (key >>> KEY_BITS & KEY_MASK) - KEY_OFFSET;
+	}
+
+
+	static long getKeyC(long key){
+		return (key & KEY_MASK) - KEY_OFFSET;
+	}
+
+
+	public double getKeyX(long key){
+		return (double) getKeyA(key)*scale;
+	}
+
+
+	public double getKeyY(long key){
+		return (double) getKeyB(key)*scale;
+	}
+
+
+	public double getKeyZ(long key){
+		return (double) getKeyC(key)*scale;
+	}
+
+
+	/**
+	 * Returns the index of the lattice point (a, b, c), expressed in units of
+	 * the scale, or -1 if it is not on the lattice or not in the grid.
+	 */
+	int getCellIndex(long a, long b, long c){
+		int sub = SUBLATTICE[(int) ((a & 1L) << 2 | (b & 1L) << 1 | (c & 1L))];
+		if(sub < 0){
+			return -1;
+		}
+		/* a - offset is even, so the shift is an exact (floor) division. */
+		long i = ((a - OFFSET_X[sub]) >> 1) - x0;
+		long j = ((b - OFFSET_Y[sub]) >> 1) - y0;
+		long k = ((c - OFFSET_Z[sub]) >> 1) - z0;
+		if(i < 0 || i >= nX || j < 0 || j >= nY || k < 0 || k >= nZ){
+			return -1;
+		}
+		return sub*nGrid + (int) ((k*nY + j)*nX + i);
+	}
+
+
+	public double getX(int index){
+		int i = (index % nGrid) % nX + x0;
+		return (double)(2*i + OFFSET_X[index / nGrid])*scale;
+	}
+
+
+	public double getY(int index){
+		int j = ((index % nGrid) / nX) % nY + y0;
+		return (double)(2*j + OFFSET_Y[index / nGrid])*scale;
+	}
+
+
+	public double getZ(int index){
+		int k = (index % nGrid) / (nX*nY) + z0;
+		return (double)(2*k + OFFSET_Z[index / nGrid])*scale;
+	}
+
+
+	/**
+	 * @return the total number of cells, i.e. the same as {@link FCCGrid#getNGrid()},
+	 * 		   or zero if the lattice is unbounded.
+	 */
+	public int size(){
+		return 4*nGrid;
+	}
+
+
+	public double getScale(){
+		return this.scale;
+	}
+
+}
@@ -3,171 +3,59 @@
 
 package org.matsim.up.acceleration.grid;
 
+/**
+ * The rhombic dodecahedron around a point of the {@link FCCLattice}. All the
+ * cells of a grid are the same polyhedron, only translated (and scaled), so
+ * the corners of its twelve faces are kept once, for the unit polyhedron,
+ * and are offset by the centroid and scale of each instance when asked for.
+ * The {@link NDPolygon} faces are only created if
+ * {@link #getFcPolyhedron()} is called.
+ */
 public class FCCPolyhedron {
 
+	// Number of faces, and of corners per face
+	public final static int NFACES = 12;
+	public final static int NCORNERS = 4;
+
+	// Corners of the unit polyhedron: face, corner, then x, y and z
+	private final static double[] UNIT_CORNERS = new double[NFACES*NCORNERS*3];
+	static {
+		// Basic +x+y, +x+z and +y+z unit polygon faces
+		double[][] dBasicPolys = {
+				{1, 0, 0,   1/2d,  1/2d,  1/2d,   0, 1, 0,   1/2d,  1/2d, -1/2d},
+				{1, 0, 0,   1/2d, -1/2d,  1/2d,   0, 0, 1,   1/2d,  1/2d,  1/2d},
+				{0, 1, 0,   1/2d,  1/2d,  1/2d,   0, 0, 1,  -1/2d,  1/2d,  1/2d}};
+
+		// Basic face, and its reflection in each axis, of each face
+		int[][] iFaceSigns = {
+				{0,  1,  1,  1}, {0,  1, -1,  1}, {0, -1,  1,  1}, {0, -1, -1,  1},
+				{1,  1,  1,  1}, {1,  1,  1, -1}, {1, -1,  1,  1}, {1, -1,  1, -1},
+				{2,  1,  1,  1}, {2,  1,  1, -1}, {2,  1, -1,  1}, {2,  1, -1, -1}};
+
+		for (int iFace=0; iFace<NFACES; iFace++) {
+			double[] dBasicPoly = dBasicPolys[iFaceSigns[iFace][0]];
+			for (int i=0; i<NCORNERS*3; i++) {
+				UNIT_CORNERS[iFace*NCORNERS*3 + i] = iFaceSigns[iFace][1 + i%3]*dBasicPoly[i];
+			}
+		}
+	}
+
 	// Data Members
-	private NDPolygon[] FcPolyhedron;
-	private final int NFaces;
+	private NDPolygon[] FcPolyhedron = null;
+	private final int NFaces = NFACES;
+	private final double dCx;
+	private final double dCy;
+	private final double dCz;
+	private final double dScale;
 
 	//Constructors
 	public FCCPolyhedron(double dCx, double dCy, double dCz, double dScale) {
-		
-		NFaces = 12;
-		
-		FcPolyhedron = new NDPolygon[NFaces];
-		
-		double[] dBasicPoly = new double[12];
-		double[] dCoordsList = new double[12];
-		
-		// Basic +x+y unit polygon face
-		dBasicPoly[0]  = 1;
-		dBasicPoly[1]  = 0;
-		dBasicPoly[2]  = 0;
-		
-		dBasicPoly[3]  = 1/2d;
-		dBasicPoly[4]  = 1/2d;
-		dBasicPoly[5]  = 1/2d;
-		
-		dBasicPoly[6]  = 0;
-		dBasicPoly[7]  = 1;
-		dBasicPoly[8]  = 0;
-		
-		dBasicPoly[9]  = 1/2d;
-		dBasicPoly[10] = 1/2d;
-		dBasicPoly[11] = -1/2d;
-		
-		// Face +x+y		
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[0] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face +x-y		
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = -1*dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[1] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face -x+y
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = -1*dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[2] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face -x-y
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = -1*dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = -1*dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[3] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face +x+z unit polygon face
-		dBasicPoly[0]  = 1;
-		dBasicPoly[1]  = 0;
-		dBasicPoly[2]  = 0;
-		
-		dBasicPoly[3]  = 1/2d;
-		dBasicPoly[4]  = -1/2d;
-		dBasicPoly[5]  = 1/2d;
-		
-		dBasicPoly[6]  = 0;
-		dBasicPoly[7]  = 0;
-		dBasicPoly[8]  = 1;
-		
-		dBasicPoly[9]  = 1/2d;
-		dBasicPoly[10] = 1/2d;
-		dBasicPoly[11] = 1/2d;
-		
-		// Face +x+z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] =   dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[4] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face +x-z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] =   dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = -1*dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[5] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face -x+z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = -1*dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[6] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face -x-z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = -1*dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = -1*dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[7] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face +y+z unit polygon face
-		dBasicPoly[0]  = 0;
-		dBasicPoly[1]  = 1;
-		dBasicPoly[2]  = 0;
-		
-		dBasicPoly[3]  = 1/2d;
-		dBasicPoly[4]  = 1/2d;
-		dBasicPoly[5]  = 1/2d;
-		
-		dBasicPoly[6]  = 0;
-		dBasicPoly[7]  = 0;
-		dBasicPoly[8]  = 1;
-		
-		dBasicPoly[9]  = -1/2d;
-		dBasicPoly[10] = 1/2d;
-		dBasicPoly[11] = 1/2d;
-		
-		// Face +y+z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[8] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face +y-z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = -1*dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[9] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face -y+z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = -1*dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[10] = new NDPolygon(4, 3, dCoordsList );
-
-		// Face -y-z
-		for (int i=0; i<12; i+=3) {
-			dCoordsList[i] = dBasicPoly[i]*dScale + dCx;
-			dCoordsList[i+1] = -1*dBasicPoly[i+1]*dScale + dCy;
-			dCoordsList[i+2] = -1*dBasicPoly[i+2]*dScale + dCz;
-		}
-		FcPolyhedron[11] = new NDPolygon(4, 3, dCoordsList );
-
+		this.dCx = dCx;
+		this.dCy = dCy;
+		this.dCz = dCz;
+		this.dScale = dScale;
 	}
-	
+
 	public FCCPolyhedron(double dScale) {
 		this(0d, 0d, 0d, dScale);
 	}
@@ -175,12 +63,60 @@ public class FCCPolyhedron {
 	public FCCPolyhedron() {
 		this(0d, 0d, 0d, 1d);
 	}
-	
- //Returns FcPolyhedron
+
+	/**
+	 * @param iAxis 0, 1 or 2 for the x, y, or z-coordinate.
+	 * @return the coordinate of a corner of the unit polyhedron, centred at
+	 * 		   the origin.
+	 */
+	public static double getUnitCorner(int iFace, int iCorner, int iAxis) {
+		return UNIT_CORNERS[(iFace*NCORNERS + iCorner)*3 + iAxis];
+	}
+
+	/**
+	 * @return the coordinate of a corner of this polyhedron, without creating
+	 * 		   its faces.
+	 */
+	public double getCorner(int iFace, int iCorner, int iAxis) {
+		double dCentre = iAxis == 0 ? dCx : (iAxis == 1 ? dCy : dCz);
+		return getUnitCorner(iFace, iCorner, iAxis)*dScale + dCentre;
+	}
+
+	/**
+	 * Checks whether a point is inside (or on the boundary of) the rhombic
+	 * dodecahedron with the given centroid and scale. Each of the twelve
+	 * face planes lies halfway to a neighbouring centroid, in the direction
+	 * of two of the axes, so the point is inside if, for every pair of
+	 * axes, the sum of its absolute offsets from the centroid is at most the
+	 * scale. By symmetry, only the pair with the largest sum is checked.
+	 */
+	public static boolean contains(double dCx, double dCy, double dCz, double dScale, double dX, double dY, double dZ) {
+		double dU = Math.abs(dX - dCx);
+		double dV = Math.abs(dY - dCy);
+		double dW = Math.abs(dZ - dCz);
+		return dU + dV + dW - Math.min(dU, Math.min(dV, dW)) <= dScale;
+	}
+
+	public boolean contains(double dX, double dY, double dZ) {
+		return contains(dCx, dCy, dCz, dScale, dX, dY, dZ);
+	}
+
+ //Returns FcPolyhedron, creating the faces the first time
 	public NDPolygon[] getFcPolyhedron( ) {
+		if (FcPolyhedron == null) {
+			NDPolygon[] faces = new NDPolygon[NFaces];
+			double[] dCoordsList = new double[NCORNERS*3];
+			for (int iFace=0; iFace<NFaces; iFace++) {
+				for (int i=0; i<NCORNERS*3; i++) {
+					dCoordsList[i] = getCorner(iFace, i/3, i%3);
+				}
+				faces[iFace] = new NDPolygon(NCORNERS, 3, dCoordsList );
+			}
+			FcPolyhedron = faces;
+		}
 		return FcPolyhedron;
 	}
-	
+
  //Returns NFaces
 	public int getNFaces( ) {
 		return NFaces;
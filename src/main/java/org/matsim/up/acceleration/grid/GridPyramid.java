@@ -0,0 +1,145 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.up.acceleration.DigicoreRecordCache;
+import org.matsim.up.acceleration.DigicoreRecordCache.Column;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
+
+/**
+ * A set of grids of the same type, but each at its own scale, that are all
+ * populated in a single pass over the raw accelerometer records. Every record
+ * is binned into each level's (independent) {@link FCCLattice}, which only
+ * takes a few arithmetic operations per level, so the different resolutions
+ * can be compared without reading the data once per scale.
+ *
+ * <p>The levels must be set up (see {@link DigiGrid3D#setupGrid(String)})
+ * before the pyramid is populated. If the first level uses a
+ * {@link DigicoreRecordCache}, so does the pyramid.</p>
+ *
+ * @author jwjoubert
+ */
+public class GridPyramid {
+	final private static Logger LOG = Logger.getLogger(GridPyramid.class);
+
+	private final List<DigiGrid3D> levels;
+
+
+	public GridPyramid(List<? extends DigiGrid3D> levels) {
+		if(levels.isEmpty()){
+			throw new IllegalArgumentException("Need at least one level in the pyramid.");
+		}
+		DigiGrid3D first = levels.get(0);
+		for(DigiGrid3D level : levels){
+			if(level.getClass() != first.getClass()
+					|| !Arrays.equals(level.getRecordColumns(), first.getRecordColumns())
+					|| level.hasInputHeader() != first.hasInputHeader()){
+				throw new IllegalArgumentException("All the levels must be of the same type, and read the same columns.");
+			}
+			if(level.cells == null){
+				throw new IllegalArgumentException("First set up the grid at scale " + level.getScale() + " with setupGrid() method.");
+			}
+		}
+		this.levels = new ArrayList<DigiGrid3D>(levels);
+	}
+
+
+	/**
+	 * Bins each raw record in the given file into every level of the pyramid,
+	 * reading the file (or its record cache) only once.
+	 */
+	public void populate(String filename){
+		final DigiGrid3D first = levels.get(0);
+		LOG.info("Populating " + levels.size() + " grids from " + filename + "...");
+		final long[] outside = new long[levels.size()];
+		final DigiGrid3D[] grids = levels.toArray(new DigiGrid3D[levels.size()]);
+		final Counter counter = new Counter("   records # ");
+		RecordHandler handler = new RecordHandler() {
+			@Override
+			public void handleRecord(double[] values) {
+				for(int i = 0; i < grids.length; i++){
+					if(!grids[i].addRecord(values[0], values[1], values[2])){
+						outside[i]++;
+					}
+				}
+				counter.incCounter();
+			}
+		};
+
+		if(first.isUsingRecordCache()){
+			DigicoreRecordCache cache = first.getRecordCache(filename);
+			int[] recordColumns = first.getRecordColumns();
+			Column[] columns = new Column[recordColumns.length];
+			for(int i = 0; i < recordColumns.length; i++){
+				columns[i] = cache.getColumn(recordColumns[i]);
+			}
+			cache.read(handler, columns);
+		} else{
+			first.getRecordReader().read(filename, handler);
+		}
+		counter.printCounter();
+
+		for(int i = 0; i < grids.length; i++){
+			if(outside[i] > 0){
+				LOG.warn("A total of " + outside[i] + " records fell outside the lattice at scale "
+						+ grids[i].getScale() + " and were ignored.");
+			}
+			grids[i].buildOcTree();
+			LOG.info("   scale " + grids[i].getScale() + ": " + grids[i].getNumberOfOccupiedCells() + " dodecahedra.");
+		}
+		LOG.info("Done populating grids.");
+	}
+
+
+	/**
+	 * Ranks the cells of every level.
+	 */
+	public void rankGridCells(){
+		for(DigiGrid3D level : levels){
+			level.rankGridCells();
+		}
+	}
+
+
+	/**
+	 * @return the levels, in the order they were given.
+	 */
+	public List<DigiGrid3D> getLevels(){
+		return Collections.unmodifiableList(this.levels);
+	}
+
+
+	public DigiGrid3D getLevel(int level){
+		return this.levels.get(level);
+	}
+
+
+	public int getNumberOfLevels(){
+		return this.levels.size();
+	}
+
+}
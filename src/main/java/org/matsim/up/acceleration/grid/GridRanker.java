@@ -0,0 +1,139 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ranks the cells of a {@link FCCCellStore} into risk classes. The cells are
+ * considered from the most to the least observations, and each is given the
+ * first risk class whose threshold is not exceeded by the cumulative share
+ * of observations. Cells with the same number of observations are treated
+ * as a group: they all get the class of the cumulative share <i>after</i>
+ * the whole group, so the result does not depend on the order of the cells.
+ *
+ * <p>Only primitive arrays are sorted, and the class of each distinct count
+ * is found with a binary search over the thresholds.</p>
+ *
+ * @author jwjoubert
+ */
+class GridRanker {
+	/* The running maximum of the thresholds. The first threshold that is not
+	 * exceeded is also the first running maximum that is not exceeded, so the
+	 * thresholds need not be sorted for a binary search. */
+	private final double[] thresholds;
+
+
+	GridRanker(List<Double> riskThresholds) {
+		this.thresholds = new double[riskThresholds.size()];
+		double max = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < thresholds.length; i++){
+			max = Math.max(max, riskThresholds.get(i));
+			thresholds[i] = max;
+		}
+	}
+
+
+	/**
+	 * @return the index of the first threshold that is not exceeded by the
+	 * 		   given cumulative share, or {@link FCCCellStore#UNRATED} if all
+	 * 		   of them are.
+	 */
+	int getRiskClass(double cumulative){
+		int low = 0;
+		int high = thresholds.length;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(cumulative <= thresholds[mid]){
+				high = mid;
+			} else{
+				low = mid + 1;
+			}
+		}
+		return low < thresholds.length ? low : FCCCellStore.UNRATED;
+	}
+
+
+	/**
+	 * The share of the cumulative count in the total, but at most one. With 
+	 * fractional counts, such as those spread by a kernel, the total and the
+	 * cumulative count are summed in a different order, and may differ by a
+	 * few ulps. Without the clamp the sparsest cells, whose share should be
+	 * exactly one, could exceed the last threshold and be left unrated.
+	 *
+	 * @return the risk class of the clamped share, as with
+	 * 		   {@link #getRiskClass(double)}.
+	 */
+	int getRiskClass(double cumulative, double total){
+		return getRiskClass(Math.min(cumulative / total, 1.0));
+	}
+
+
+	/**
+	 * Sets the risk class of every occupied cell. Cells without observations
+	 * remain unrated.
+	 *
+	 * @param total the total number of observations the cumulative shares are
+	 * 		  expressed against.
+	 * @return the counts of the occupied cells in ascending order.
+	 */
+	double[] rank(FCCCellStore cells, double total){
+		double[] sorted = new double[cells.getNumberOfOccupiedCells()];
+		int index = 0;
+		for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+			sorted[index++] = cells.getCount(cell);
+		}
+		Arrays.sort(sorted);
+
+		/* The class of each distinct count, from the largest count down. */
+		double[] values = new double[sorted.length];
+		int[] classes = new int[sorted.length];
+		int distinct = 0;
+		double cumulative = 0.0;
+		int i = sorted.length - 1;
+		while(i >= 0){
+			double value = sorted[i];
+			while(i >= 0 && sorted[i] == value){
+				cumulative += value;
+				i--;
+			}
+			values[distinct] = value;
+			classes[distinct++] = getRiskClass(cumulative, total);
+		}
+
+		/* Reverse, so the distinct counts are ascending for the search. */
+		for(int low = 0, high = distinct - 1; low < high; low++, high--){
+			double value = values[low];
+			values[low] = values[high];
+			values[high] = value;
+			int riskClass = classes[low];
+			classes[low] = classes[high];
+			classes[high] = riskClass;
+		}
+
+		cells.clearRiskClasses();
+		for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+			cells.setRiskClass(cell, classes[Arrays.binarySearch(values, 0, distinct, cells.getCount(cell))]);
+		}
+		return sorted;
+	}
+
+}
@@ -16,7 +16,7 @@ public class GridSlicer_XYSpeed {
 	 * @param args
 	 * <ol>
 	 * 		<li> the folder where the {@link DigiGrid_XYSpeed} file is found, typically 
-	 * 		     called <code>cellValuesAndRiskClasses.csv</code>;
+	 * 		     called <code>cellValuesAndRiskClasses.bin</code> or <code>cellValuesAndRiskClasses.csv</code>;
 	 * 		<li> the scale of the original grid (in milli-g);
 	 * 		<li> the minimum level where slicing will start (in milli-g);
 	 * 		<li> the maximum level where slicing will end (in milli-g); and
@@ -31,7 +31,7 @@ public class GridSlicer_XYSpeed {
 		double sliceStep = Double.parseDouble(args[4]);
 		
 		DigiGrid_XYSpeed grid = new DigiGrid_XYSpeed(scale);
-		grid.populateFromGridFile(gridFolder + (gridFolder.endsWith("/") ? "" : "/") + "cellValuesAndRiskClasses.csv");
+		grid.populateFromGridFolder(gridFolder);
 		grid.setSnapshotsFolder(gridFolder);
 		grid.setVisual(Visual.SLICE);
 		grid.setVisualiseOnScreen(false);
@@ -1,10 +1,9 @@
 package org.matsim.up.acceleration.grid;
 
-import org.matsim.up.acceleration.grid.DigiGrid3D.Visual;
-
 /**
  * Class to read a {@link DigiGrid_XYZ} from file, and visualise it by making 
- * multiple slices in the xy-plane through the blob.
+ * multiple slices in the xy-plane through the blob. The slices are rendered
+ * headless to PNG images with the {@link SliceRenderer}, in parallel.
  *
  * @author jwjoubert
  */
@@ -16,11 +15,14 @@ public class GridSlicer_XYZ {
 	 * @param args
 	 * <ol>
 	 * 		<li> the folder where the {@link DigiGrid_XYZ} file is found, typically 
-	 * 		     called <code>cellValuesAndRiskClasses.csv</code>;
+	 * 		     called <code>cellValuesAndRiskClasses.bin</code> or <code>cellValuesAndRiskClasses.csv</code>;
 	 * 		<li> the scale of the original grid (in milli-g);
 	 * 		<li> the minimum level where slicing will start (in milli-g);
-	 * 		<li> the maximum level where slicing will end (in milli-g); and
-	 * 		<li> the step-wise increment of each slice (in milli-g).
+	 * 		<li> the maximum level where slicing will end (in milli-g);
+	 * 		<li> the step-wise increment of each slice (in milli-g);
+	 * 		<li> (optional) the size of a pixel (in milli-g), default 2.0; and
+	 * 		<li> (optional) the number of threads, default the number of 
+	 * 			 available processors.
 	 * </ol>
 	 */
 	public static void main(String[] args) {
@@ -30,16 +32,18 @@ public class GridSlicer_XYZ {
 		double sliceEnd = Double.parseDouble(args[3]);
 		double sliceStep = Double.parseDouble(args[4]);
 		
-		DigiGrid_XYZ grid = new DigiGrid_XYZ(scale);
-		grid.populateFromGridFile(gridFolder + (gridFolder.endsWith("/") ? "" : "/") + "cellValuesAndRiskClasses.csv");
-		grid.setSnapshotsFolder(gridFolder);
-		grid.setVisual(Visual.SLICE);
-		grid.setVisualiseOnScreen(false);
+		double pixelSize = args.length > 5 ? Double.parseDouble(args[5]) : 2.0;
+		int numberOfThreads = args.length > 6 ? Integer.parseInt(args[6]) : Runtime.getRuntime().availableProcessors();
 		
-		for(double level = sliceStart; level <= sliceEnd; level += sliceStep){
-			grid.setSliceDepth(level);
-			grid.visualiseGrid();
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(scale);
+		grid.populateFromGridFolder(gridFolder);
+		if(!grid.isRanked()){
+			grid.rankGridCells();
 		}
+		
+		SliceRenderer renderer = new SliceRenderer(grid, pixelSize);
+		renderer.setNumberOfThreads(numberOfThreads);
+		renderer.renderSlices(sliceStart, sliceEnd, sliceStep, gridFolder);
 	}
 
 }
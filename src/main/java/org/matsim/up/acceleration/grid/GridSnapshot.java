@@ -0,0 +1,210 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Versioned binary snapshot of a (ranked) {@link DigiGrid3D}, i.e. the
+ * binary counterpart of <code>cellValuesAndRiskClasses.csv</code>. All values
+ * are little-endian. The header holds the type of grid, the scale, the
+ * number of points considered, whether the grid is ranked, and the risk
+ * thresholds. It is followed by the number of occupied cells, and then the
+ * {@link FCCLattice} keys, counts and risk classes of these cells, each as
+ * a column. The keys are absolute lattice coordinates, so no separate
+ * origin is needed. The file is written through a fixed-size buffer, and
+ * the columns are read through memory-mapped windows, so that snapshots of
+ * any size can be written and read.
+ *
+ * @author jwjoubert
+ */
+class GridSnapshot {
+	final static String FILENAME = "cellValuesAndRiskClasses.bin";
+	final private static int MAGIC = 0x4447534E;
+	final private static int VERSION = 1;
+	final private static int BUFFER_SIZE = 1 << 16;
+	/* The number of cells per mapped window, keeping maps well below 2GB. */
+	final private static int WINDOW = 1 << 24;
+
+	String gridType;
+	double scale;
+	double pointsConsidered;
+	boolean isRanked;
+	List<Double> riskThresholds;
+	FCCCellStore cells;
+
+
+	/**
+	 * @return true if the file starts like a snapshot.
+	 */
+	static boolean isSnapshot(String filename){
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+			ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0){ }
+			return !buffer.hasRemaining() && buffer.getInt(0) == MAGIC;
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		}
+	}
+
+
+	/**
+	 * @return the size of the header, up to and including the number of 
+	 * 		   occupied cells, i.e. the offset of the first key.
+	 */
+	static long getHeaderSize(int typeLength, int thresholds){
+		return 4L + 4L + 4L + typeLength + 8L + 8L + 1L + 4L + 8L*thresholds + 4L;
+	}
+
+
+	/**
+	 * @return the size of a snapshot with the given header and number of 
+	 * 		   occupied cells: a key (8 bytes), count (8 bytes) and risk class
+	 * 		   (1 byte) per cell.
+	 */
+	static long getFileSize(long headerSize, long occupied){
+		return headerSize + (8L + 8L + 1L)*occupied;
+	}
+
+
+	void write(String filename){
+		byte[] type = gridType.getBytes(StandardCharsets.UTF_8);
+		int thresholds = riskThresholds == null ? 0 : riskThresholds.size();
+		int occupied = cells.getNumberOfOccupiedCells();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		if(getHeaderSize(type.length, thresholds) > BUFFER_SIZE){
+			throw new IllegalArgumentException("Snapshot header of " + gridType + " is too large.");
+		}
+
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+			buffer.putInt(MAGIC).putInt(VERSION);
+			buffer.putInt(type.length).put(type);
+			buffer.putDouble(scale).putDouble(pointsConsidered).put((byte) (isRanked ? 1 : 0));
+			buffer.putInt(thresholds);
+			for(int i = 0; i < thresholds; i++){
+				buffer.putDouble(riskThresholds.get(i));
+			}
+			buffer.putInt(occupied);
+
+			/* Each column in turn, through the same buffer. */
+			for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+				if(buffer.remaining() < 8){
+					flush(buffer, channel);
+				}
+				buffer.putLong(cells.getKey(cell));
+			}
+			for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+				if(buffer.remaining() < 8){
+					flush(buffer, channel);
+				}
+				buffer.putDouble(cells.getCount(cell));
+			}
+			for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+				if(!buffer.hasRemaining()){
+					flush(buffer, channel);
+				}
+				buffer.put((byte) cells.getRiskClass(cell));
+			}
+			flush(buffer, channel);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot write to " + filename);
+		}
+	}
+
+
+	private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+
+	static GridSnapshot read(String filename){
+		GridSnapshot snapshot = new GridSnapshot();
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+			/* The header is read as is, the columns through windowed maps. */
+			long size = channel.size();
+			ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, BUFFER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0){ }
+			buffer.flip();
+			if(buffer.remaining() < 8 || buffer.getInt() != MAGIC){
+				throw new IllegalArgumentException("File " + filename + " is not a grid snapshot.");
+			}
+			int version = buffer.getInt();
+			if(version != VERSION){
+				throw new IllegalArgumentException("Cannot read version " + version + " of grid snapshot " + filename);
+			}
+			int typeLength = buffer.getInt();
+			if(typeLength < 0 || typeLength > buffer.remaining()){
+				throw new IllegalArgumentException("Grid snapshot " + filename + " has a corrupt header.");
+			}
+			byte[] type = new byte[typeLength];
+			buffer.get(type);
+			snapshot.gridType = new String(type, StandardCharsets.UTF_8);
+			snapshot.scale = buffer.getDouble();
+			snapshot.pointsConsidered = buffer.getDouble();
+			snapshot.isRanked = buffer.get() == 1;
+			int thresholds = buffer.getInt();
+			snapshot.riskThresholds = new ArrayList<>(thresholds);
+			for(int i = 0; i < thresholds; i++){
+				snapshot.riskThresholds.add(buffer.getDouble());
+			}
+			int occupied = buffer.getInt();
+
+			long keys = getHeaderSize(typeLength, thresholds);
+			long counts = keys + 8L*occupied;
+			long classes = counts + 8L*occupied;
+			if(occupied < 0 || size != getFileSize(keys, occupied)){
+				throw new IllegalArgumentException("Grid snapshot " + filename + " is incomplete.");
+			}
+			snapshot.cells = new FCCCellStore(occupied);
+			for(int from = 0; from < occupied; from += WINDOW){
+				int n = Math.min(WINDOW, occupied - from);
+				ByteBuffer keyWindow = channel.map(MapMode.READ_ONLY, keys + 8L*from, 8L*n).order(ByteOrder.LITTLE_ENDIAN);
+				ByteBuffer countWindow = channel.map(MapMode.READ_ONLY, counts + 8L*from, 8L*n).order(ByteOrder.LITTLE_ENDIAN);
+				ByteBuffer classWindow = channel.map(MapMode.READ_ONLY, classes + from, n);
+				for(int i = 0; i < n; i++){
+					int cell = snapshot.cells.getOrCreateCell(keyWindow.getLong(8*i));
+					snapshot.cells.setCount(cell, countWindow.getDouble(8*i));
+					snapshot.cells.setRiskClass(cell, classWindow.get(i));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		}
+		return snapshot;
+	}
+
+}
@@ -14,7 +14,7 @@ public class GridVisualiser_XYZ {
 	 * arguments:
 	 * @param args
 	 * <ol>
-	 * 		<li> the {@link DigiGrid_XYZ} file, typically called <code>cellValuesAndRiskClasses.csv</code>;
+	 * 		<li> the folder with the {@link DigiGrid_XYZ} file, typically called <code>cellValuesAndRiskClasses.bin</code> or <code>cellValuesAndRiskClasses.csv</code>;
 	 * 		<li> the scale of the original grid (in milli-g); and
 	 * 		<li> the type of visualisation, see {@link Visual}.
 	 * </ol>
@@ -25,7 +25,7 @@ public class GridVisualiser_XYZ {
 		Visual visual = Visual.valueOf(args[2]);
 		
 		DigiGrid_XYZ grid = new DigiGrid_XYZ(scale);
-		grid.populateFromGridFile(gridFolder + (gridFolder.endsWith("/") ? "" : "/") + "cellValuesAndRiskClasses.csv");
+		grid.populateFromGridFolder(gridFolder);
 		grid.setSnapshotsFolder(gridFolder);
 		grid.setVisual(visual);
 		grid.visualiseGrid();
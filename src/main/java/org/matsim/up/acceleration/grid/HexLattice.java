@@ -0,0 +1,125 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import org.matsim.up.utils.grid.GeneralGrid;
+
+/**
+ * Closed-form locator for the hexagons of a {@link DigiGrid2D}. The 
+ * hexagons have the same size and (flat-topped) orientation as the 
+ * {@link GeneralGrid.GridType#HEX} cells of a {@link GeneralGrid} with the
+ * same width, but the lattice is anchored at the origin. Centroids are 
+ * addressed with axial coordinates (q, r): the centroid of hexagon (q, r) 
+ * is at x = 0.75*width*q, y = sqrt(3)/2*width*(r + q/2). The hexagon 
+ * containing a point is found by converting it to (fractional) cube 
+ * coordinates, and rounding those, so no geometry is created and no tree 
+ * is searched.
+ *
+ * <p>Every hexagon has a unique key, packing (q, r), so that a grid can 
+ * grow wherever records fall without knowing its extent in advance.</p>
+ *
+ * @author jwjoubert
+ */
+public class HexLattice {
+	/** The key returned for a point that is too far from the origin to be packed. */
+	public final static long NO_KEY = FCCLattice.NO_KEY;
+	private final static int KEY_BITS = 31;
+	private final static long KEY_MASK = (1L << KEY_BITS) - 1L;
+	private final static long KEY_OFFSET = 1L << (KEY_BITS - 1);
+	private final static double SQRT3 = Math.sqrt(3.0);
+
+	private final double width;
+	private final double inverseRadius;
+
+	/**
+	 * @param width the width of a hexagon, from corner to opposite corner, 
+	 * 		  i.e. the width of a {@link GeneralGrid} cell.
+	 */
+	public HexLattice(double width) {
+		this.width = width;
+		this.inverseRadius = 2.0 / width;
+	}
+
+
+	/**
+	 * Finds the key of the hexagon containing the given point.
+	 *
+	 * @return the key, or {@link #NO_KEY} if the point is too far from the 
+	 * 		   origin.
+	 */
+	public long getCellKey(double x, double y){
+		/* Fractional cube coordinates, with q + r + s = 0. */
+		double q = 2.0/3.0*x*inverseRadius;
+		double r = (-1.0/3.0*x + SQRT3/3.0*y)*inverseRadius;
+		double s = -q - r;
+		/* Also catches NaN values. */
+		if(!(Math.abs(q) < KEY_OFFSET - 1 && Math.abs(r) < KEY_OFFSET - 1 && Math.abs(s) < KEY_OFFSET - 1)){
+			return NO_KEY;
+		}
+		double rq = Math.rint(q);
+		double rr = Math.rint(r);
+		double rs = Math.rint(s);
+
+		/* Restore q + r + s = 0 by recomputing the coordinate with the largest error. */
+		double dq = Math.abs(rq - q);
+		double dr = Math.abs(rr - r);
+		double ds = Math.abs(rs - s);
+		if(dq > dr && dq > ds){
+			rq = -rr - rs;
+		} else if(dr > ds){
+			rr = -rq - rs;
+		}
+		return packKey((long) rq, (long) rr);
+	}
+
+
+	static long packKey(long q, long r){
+		if(q < -KEY_OFFSET || q >= KEY_OFFSET || r < -KEY_OFFSET || r >= KEY_OFFSET){
+			return NO_KEY;
+		}
+		return (q + KEY_OFFSET) << KEY_BITS | (r + KEY_OFFSET);
+	}
+
+
+	static long getKeyQ(long key){
+		return (key >>> KEY_BITS & KEY_MASK) - KEY_OFFSET;
+	}
+
+
+	static long getKeyR(long key){
+		return (key & KEY_MASK) - KEY_OFFSET;
+	}
+
+
+	public double getKeyX(long key){
+		return 0.75*width*getKeyQ(key);
+	}
+
+
+	public double getKeyY(long key){
+		return SQRT3/2.0*width*(getKeyR(key) + 0.5*getKeyQ(key));
+	}
+
+
+	public double getWidth(){
+		return this.width;
+	}
+
+}
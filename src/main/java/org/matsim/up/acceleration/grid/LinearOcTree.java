@@ -0,0 +1,413 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+
+/**
+ * A read-only octree of integer values, such as the cell indices of a
+ * {@link DigiGrid3D}, that is stored in flat primitive arrays rather than in
+ * {@link OcTree.Node} objects. The eight children of a node are stored next
+ * to each other, in the same octant order as the Morton code, and the nodes
+ * are laid out depth-first, so a query mostly walks forward through memory.
+ * A node's bounds are not stored but halved on the way down, exactly as
+ * {@link OcTree} does when it splits a node.
+ *
+ * <p>The tree is built once, with {@link #build(double, double, double,
+ * double, double, double, double[], double[], double[], int[])}, and then
+ * has the same structure, and gives the same answers, as an {@link OcTree}
+ * built from the same points.</p>
+ *
+ * @author jwjoubert
+ */
+public class LinearOcTree {
+	/* The order in which OcTree.Node.get() considers the children. */
+	private final static int[] GET_ORDER = {0, 4, 2, 6, 1, 5, 3, 7};
+
+	private final OcTree.Cube bounds;
+
+	/* Per node: the index of its first child, or -1 for a leaf node; and the
+	 * index of its point, or -1 if it is empty or has children. */
+	private int[] firstChild;
+	private int[] nodePoint;
+	private int numberOfNodes = 0;
+
+	/* Per (distinct) point: its coordinates, and its values from
+	 * valueStart[point] to valueStart[point+1]-1. */
+	private double[] pointX;
+	private double[] pointY;
+	private double[] pointZ;
+	private int[] valueStart;
+	private int[] values;
+	private int numberOfPoints = 0;
+	private int size = 0;
+
+
+	private LinearOcTree(OcTree.Cube bounds, int capacity) {
+		this.bounds = bounds;
+		this.firstChild = new int[Math.max(8, capacity)];
+		this.nodePoint = new int[firstChild.length];
+		this.pointX = new double[Math.max(1, capacity)];
+		this.pointY = new double[pointX.length];
+		this.pointZ = new double[pointX.length];
+		this.valueStart = new int[pointX.length + 1];
+		this.values = new int[pointX.length];
+	}
+
+
+	/**
+	 * Builds the tree from all the given points, in the same way as
+	 * {@link OcTree#bulkLoad(double, double, double, double, double, double,
+	 * double[], double[], double[], java.util.List)}. Repeated values at the
+	 * same point are only kept once.
+	 */
+	public static LinearOcTree build(final double minX, final double minY, final double minZ,
+			final double maxX, final double maxY, final double maxZ,
+			double[] x, double[] y, double[] z, int[] values){
+		int n = values.length;
+		if(x.length != n || y.length != n || z.length != n){
+			throw new IllegalArgumentException("Need the same number of coordinates and values.");
+		}
+		LinearOcTree tree = new LinearOcTree(new OcTree.Cube(minX, minY, minZ, maxX, maxY, maxZ), n);
+		OcTree.Cube bounds = tree.bounds;
+		for(int i = 0; i < n; i++){
+			if(!bounds.containsOrEquals(x[i], y[i], z[i])){
+				throw new IllegalArgumentException("Cannot add a point at " +
+						"x=" + x[i] + ", " +
+						"y=" + y[i] + ", " +
+						"z=" + z[i] + " with bounds " + bounds.toString());
+			}
+		}
+
+		long[] codes = new long[n];
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++){
+			codes[i] = OcTree.getMortonCode(bounds, x[i], y[i], z[i]);
+			order[i] = i;
+		}
+		OcTree.sortByCode(codes, order);
+
+		int root = tree.addNodes(1);
+		tree.build(root, bounds.minX, bounds.minY, bounds.minZ, bounds.maxX, bounds.maxY, bounds.maxZ,
+				order, 0, n, new int[n], x, y, z, values);
+		tree.trim();
+		return tree;
+	}
+
+
+	/* Same split rule, and grouping per child, as OcTree.Node.build(). */
+	private void build(int node, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+			int[] order, int from, int to, int[] scratch, double[] x, double[] y, double[] z, int[] values){
+		if(from == to){
+			return;
+		}
+		int first = order[from];
+		boolean distinct = false;
+		for(int i = from + 1; i < to && !distinct; i++){
+			int point = order[i];
+			distinct = x[point] != x[first] || y[point] != y[first] || z[point] != z[first];
+		}
+
+		if(!distinct){
+			nodePoint[node] = addPoint(x[first], y[first], z[first], values, order, from, to);
+			return;
+		}
+
+		double centerX = (minX + maxX) / 2;
+		double centerY = (minY + maxY) / 2;
+		double centerZ = (minZ + maxZ) / 2;
+		int[] starts = new int[9];
+		boolean grouped = true;
+		int previous = 0;
+		for(int i = from; i < to; i++){
+			int point = order[i];
+			int child = getChildIndex(x[point], y[point], z[point], centerX, centerY, centerZ);
+			grouped &= child >= previous;
+			previous = child;
+			starts[child + 1]++;
+		}
+		for(int i = 0; i < 8; i++){
+			starts[i+1] += starts[i];
+		}
+		if(!grouped){
+			int[] next = starts.clone();
+			for(int i = from; i < to; i++){
+				int point = order[i];
+				scratch[from + next[getChildIndex(x[point], y[point], z[point], centerX, centerY, centerZ)]++] = point;
+			}
+			System.arraycopy(scratch, from, order, from, to - from);
+		}
+
+		int children = addNodes(8);
+		firstChild[node] = children;
+		for(int i = 0; i < 8; i++){
+			boolean east = (i & 4) != 0;
+			boolean north = (i & 2) != 0;
+			boolean upper = (i & 1) != 0;
+			build(children + i,
+					east ? centerX : minX, north ? centerY : minY, upper ? centerZ : minZ,
+					east ? maxX : centerX, north ? maxY : centerY, upper ? maxZ : centerZ,
+					order, from + starts[i], from + starts[i+1], scratch, x, y, z, values);
+		}
+	}
+
+
+	private int addNodes(int number){
+		if(numberOfNodes + number > firstChild.length){
+			int length = Math.max(numberOfNodes + number, 2*firstChild.length);
+			firstChild = Arrays.copyOf(firstChild, length);
+			nodePoint = Arrays.copyOf(nodePoint, length);
+		}
+		int first = numberOfNodes;
+		Arrays.fill(firstChild, first, first + number, -1);
+		Arrays.fill(nodePoint, first, first + number, -1);
+		numberOfNodes += number;
+		return first;
+	}
+
+
+	/* The points are all at the same position, and have been sorted before,
+	 * so the arrays never need to grow. */
+	private int addPoint(double x, double y, double z, int[] values, int[] order, int from, int to){
+		int point = numberOfPoints++;
+		pointX[point] = x;
+		pointY[point] = y;
+		pointZ[point] = z;
+		int start = valueStart[point];
+		int end = start;
+		for(int i = from; i < to; i++){
+			int value = values[order[i]];
+			boolean found = false;
+			for(int j = start; j < end && !found; j++){
+				found = this.values[j] == value;
+			}
+			if(!found){
+				this.values[end++] = value;
+			}
+		}
+		valueStart[point+1] = end;
+		size += end - start;
+		return point;
+	}
+
+
+	private void trim(){
+		firstChild = Arrays.copyOf(firstChild, numberOfNodes);
+		nodePoint = Arrays.copyOf(nodePoint, numberOfNodes);
+		pointX = Arrays.copyOf(pointX, numberOfPoints);
+		pointY = Arrays.copyOf(pointY, numberOfPoints);
+		pointZ = Arrays.copyOf(pointZ, numberOfPoints);
+		valueStart = Arrays.copyOf(valueStart, numberOfPoints + 1);
+		values = Arrays.copyOf(values, size);
+	}
+
+
+	/**
+	 * @return the number of values in the tree.
+	 */
+	public int size(){
+		return this.size;
+	}
+
+
+	/**
+	 * @return the number of nodes, including empty ones, in the tree.
+	 */
+	public int getNumberOfNodes(){
+		return this.numberOfNodes;
+	}
+
+
+	/**
+	 * @return the (first) value closest to the given point, as with
+	 * 		   {@link OcTree#get(double, double, double)}, or -1 if the tree
+	 * 		   is empty.
+	 */
+	public int get(final double x, final double y, final double z){
+		return get(0, bounds.minX, bounds.minY, bounds.minZ, bounds.maxX, bounds.maxY, bounds.maxZ,
+				x, y, z, new double[]{Double.POSITIVE_INFINITY});
+	}
+
+
+	private int get(int node, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+			final double x, final double y, final double z, double[] bestDistance){
+		int children = firstChild[node];
+		if(children < 0){
+			int point = nodePoint[node];
+			if(point >= 0){
+				double distance = getDistance(point, x, y, z);
+				if(distance < bestDistance[0]){
+					bestDistance[0] = distance;
+					return values[valueStart[point]];
+				}
+			}
+			return -1;
+		}
+
+		double centerX = (minX + maxX) / 2;
+		double centerY = (minY + maxY) / 2;
+		double centerZ = (minZ + maxZ) / 2;
+		int best = getChildIndex(x, y, z, centerX, centerY, centerZ);
+		int closest = getChild(children, best, minX, minY, minZ, maxX, maxY, maxZ, centerX, centerY, centerZ, x, y, z, bestDistance);
+		for(int child : GET_ORDER){
+			if(child != best && getCubeDistance(child, minX, minY, minZ, maxX, maxY, maxZ, centerX, centerY, centerZ, x, y, z) < bestDistance[0]){
+				int value = getChild(children, child, minX, minY, minZ, maxX, maxY, maxZ, centerX, centerY, centerZ, x, y, z, bestDistance);
+				if(value >= 0){
+					closest = value;
+				}
+			}
+		}
+		return closest;
+	}
+
+
+	private int getChild(int children, int child, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+			double centerX, double centerY, double centerZ, final double x, final double y, final double z, double[] bestDistance){
+		boolean east = (child & 4) != 0;
+		boolean north = (child & 2) != 0;
+		boolean upper = (child & 1) != 0;
+		return get(children + child,
+				east ? centerX : minX, north ? centerY : minY, upper ? centerZ : minZ,
+				east ? maxX : centerX, north ? maxY : centerY, upper ? maxZ : centerZ,
+				x, y, z, bestDistance);
+	}
+
+
+	/**
+	 * Finds all the values within a given distance of a point.
+	 *
+	 * @return the values, in no particular order.
+	 */
+	public int[] get(final double x, final double y, final double z, final double distance){
+		final int[][] found = {new int[16]};
+		final int[] number = {0};
+		execute(x, y, z, distance, new Executor() {
+			@Override
+			public void execute(double x, double y, double z, int value) {
+				if(number[0] == found[0].length){
+					found[0] = Arrays.copyOf(found[0], 2*number[0]);
+				}
+				found[0][number[0]++] = value;
+			}
+		});
+		return Arrays.copyOf(found[0], number[0]);
+	}
+
+
+	/**
+	 * Executes the executor for every value within a given distance of a
+	 * point. Only nodes whose bounds are within the distance are visited.
+	 *
+	 * @return the number of values executed.
+	 */
+	public int execute(final double x, final double y, final double z, final double distance, final Executor executor){
+		if(calcDistance(bounds.minX, bounds.minY, bounds.minZ, bounds.maxX, bounds.maxY, bounds.maxZ, x, y, z) > distance){
+			return 0;
+		}
+		return execute(0, bounds.minX, bounds.minY, bounds.minZ, bounds.maxX, bounds.maxY, bounds.maxZ,
+				x, y, z, distance, executor);
+	}
+
+
+	/* The node itself is already known to be within the distance. */
+	private int execute(int node, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+			final double x, final double y, final double z, final double distance, final Executor executor){
+		int children = firstChild[node];
+		if(children < 0){
+			int point = nodePoint[node];
+			if(point >= 0 && getDistance(point, x, y, z) <= distance){
+				for(int i = valueStart[point]; i < valueStart[point+1]; i++){
+					executor.execute(pointX[point], pointY[point], pointZ[point], values[i]);
+				}
+				return valueStart[point+1] - valueStart[point];
+			}
+			return 0;
+		}
+
+		double centerX = (minX + maxX) / 2;
+		double centerY = (minY + maxY) / 2;
+		double centerZ = (minZ + maxZ) / 2;
+		int executed = 0;
+		for(int child = 0; child < 8; child++){
+			boolean east = (child & 4) != 0;
+			boolean north = (child & 2) != 0;
+			boolean upper = (child & 1) != 0;
+			double childMinX = east ? centerX : minX;
+			double childMinY = north ? centerY : minY;
+			double childMinZ = upper ? centerZ : minZ;
+			double childMaxX = east ? maxX : centerX;
+			double childMaxY = north ? maxY : centerY;
+			double childMaxZ = upper ? maxZ : centerZ;
+			if(calcDistance(childMinX, childMinY, childMinZ, childMaxX, childMaxY, childMaxZ, x, y, z) <= distance){
+				executed += execute(children + child, childMinX, childMinY, childMinZ, childMaxX, childMaxY, childMaxZ,
+						x, y, z, distance, executor);
+			}
+		}
+		return executed;
+	}
+
+
+	/**
+	 * Visitor for the values found by a query, without boxing the values.
+	 */
+	public interface Executor{
+		public void execute(double x, double y, double z, int value);
+	}
+
+
+	private double getDistance(int point, final double x, final double y, final double z){
+		return Math.sqrt(
+				Math.pow(pointX[point] - x, 2) +
+				Math.pow(pointY[point] - y, 2) +
+				Math.pow(pointZ[point] - z, 2));
+	}
+
+
+	private static double getCubeDistance(int child, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+			double centerX, double centerY, double centerZ, final double x, final double y, final double z){
+		boolean east = (child & 4) != 0;
+		boolean north = (child & 2) != 0;
+		boolean upper = (child & 1) != 0;
+		return calcDistance(
+				east ? centerX : minX, north ? centerY : minY, upper ? centerZ : minZ,
+				east ? maxX : centerX, north ? maxY : centerY, upper ? maxZ : centerZ,
+				x, y, z);
+	}
+
+
+	/* The same as OcTree.Cube.calcDistance(), without the cube. */
+	private static double calcDistance(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+			final double x, final double y, final double z){
+		double distanceX = minX <= x && x <= maxX ? 0.0 : Math.min(Math.abs(minX - x), Math.abs(maxX - x));
+		double distanceY = minY <= y && y <= maxY ? 0.0 : Math.min(Math.abs(minY - y), Math.abs(maxY - y));
+		double distanceZ = minZ <= z && z <= maxZ ? 0.0 : Math.min(Math.abs(minZ - z), Math.abs(maxZ - z));
+		return Math.sqrt(Math.pow(distanceX, 2) + Math.pow(distanceY, 2) + Math.pow(distanceZ, 2));
+	}
+
+
+	/* The octant of the point, with the x-bit first, as in the Morton code. */
+	private static int getChildIndex(final double x, final double y, final double z,
+			double centerX, double centerY, double centerZ){
+		return (x < centerX ? 0 : 4)
+				| (y < centerY ? 0 : 2)
+				| (z < centerZ ? 0 : 1);
+	}
+
+}
@@ -21,8 +21,12 @@ package org.matsim.up.acceleration.grid;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
 /**
  * 
@@ -73,6 +77,111 @@ public class OcTree<T> implements Serializable {
 	}
 	
 	
+	/**
+	 * Builds a tree from all the given points at once. The points are sorted
+	 * by their Morton (Z-order) code, so that the points of every node are 
+	 * (nearly always) already grouped per child, and the tree is then built
+	 * top-down in a single pass without re-inserting leaves when nodes split.
+	 * The tree is the same as when each point is added with 
+	 * {@link #put(double, double, double, Object)}, in the given order.
+	 * 
+	 * @param x the x-coordinates of the points;
+	 * @param y the y-coordinates of the points;
+	 * @param z the z-coordinates of the points; and
+	 * @param values the value of each point.
+	 */
+	public static <T> OcTree<T> bulkLoad(final double minX, final double minY, final double minZ,
+			final double maxX, final double maxY, final double maxZ, 
+			double[] x, double[] y, double[] z, List<T> values){
+		int n = values.size();
+		if(x.length != n || y.length != n || z.length != n){
+			throw new IllegalArgumentException("Need the same number of coordinates and values.");
+		}
+		OcTree<T> tree = new OcTree<T>(minX, minY, minZ, maxX, maxY, maxZ);
+		Cube bounds = tree.top.bounds;
+		for(int i = 0; i < n; i++){
+			if(!bounds.containsOrEquals(x[i], y[i], z[i])){
+				throw new IllegalArgumentException("Cannot add a point at " +
+						"x=" + x[i] + ", " +
+						"y=" + y[i] + ", " +
+						"z=" + z[i] + " with bounds " + bounds.toString());
+			}
+		}
+		
+		/* Sort the points on their Morton codes, keeping points with the 
+		 * same code in their original order. */
+		long[] codes = new long[n];
+		int[] order = new int[n];
+		for(int i = 0; i < n; i++){
+			codes[i] = getMortonCode(bounds, x[i], y[i], z[i]);
+			order[i] = i;
+		}
+		sortByCode(codes, order);
+		
+		tree.size = tree.top.build(order, 0, n, new int[n], x, y, z, values);
+		tree.modCount++;
+		return tree;
+	}
+	
+	
+	final static int MORTON_BITS = 21;
+	
+	
+	/* Interleaves the quantised coordinates, x first, to match Node.getChildIndex(). */
+	static long getMortonCode(Cube bounds, double x, double y, double z){
+		return spreadBits(quantise(x, bounds.minX, bounds.maxX)) << 2
+				| spreadBits(quantise(y, bounds.minY, bounds.maxY)) << 1
+				| spreadBits(quantise(z, bounds.minZ, bounds.maxZ));
+	}
+	
+	
+	private static long quantise(double value, double min, double max){
+		if(max <= min){
+			return 0L;
+		}
+		long cells = 1L << MORTON_BITS;
+		long q = (long) ((value - min) / (max - min) * cells);
+		return Math.max(0L, Math.min(cells - 1, q));
+	}
+	
+	
+	private static long spreadBits(long v){
+		v &= 0x1fffffL;
+		v = (v | v << 32) & 0x1f00000000ffffL;
+		v = (v | v << 16) & 0x1f0000ff0000ffL;
+		v = (v | v << 8) & 0x100f00f00f00f00fL;
+		v = (v | v << 4) & 0x10c30c30c30c30c3L;
+		v = (v | v << 2) & 0x1249249249249249L;
+		return v;
+	}
+	
+	
+	/* Stable least-significant-digit radix sort of the (non-negative) codes. */
+	static void sortByCode(long[] codes, int[] order){
+		int n = codes.length;
+		long[] codeBuffer = new long[n];
+		int[] orderBuffer = new int[n];
+		int[] counts = new int[257];
+		for(int shift = 0; shift < 3*MORTON_BITS; shift += 8){
+			Arrays.fill(counts, 0);
+			for(int i = 0; i < n; i++){
+				counts[(int) (codes[i] >>> shift & 0xff) + 1]++;
+			}
+			for(int i = 0; i < 256; i++){
+				counts[i+1] += counts[i];
+			}
+			for(int i = 0; i < n; i++){
+				int digit = (int) (codes[i] >>> shift & 0xff);
+				int position = counts[digit]++;
+				codeBuffer[position] = codes[i];
+				orderBuffer[position] = order[i];
+			}
+			System.arraycopy(codeBuffer, 0, codes, 0, n);
+			System.arraycopy(orderBuffer, 0, order, 0, n);
+		}
+	}
+	
+	
 	public boolean put(double x, double y, double z, final T value){
 		if(this.top.put(x, y, z, value)){
 			incrementSize();
@@ -82,12 +191,98 @@ public class OcTree<T> implements Serializable {
 	}
 	
 	
+	/**
+	 * @return the number of values in the tree.
+	 */
+	public int size(){
+		return this.size;
+	}
+	
+	
 	public T get(final double x, final double y, final double z){
 		return this.top.get(x, y, z, new MutableDouble(Double.POSITIVE_INFINITY));
 	}
 	
+	/**
+	 * Finds all the values within a given distance of a point.
+	 * 
+	 * @return the values, in no particular order. Values at the same point 
+	 * 		   are all included.
+	 */
 	public Collection<T> get(final double x, final double y, final double z, final double distance){
-		return null;
+		final List<T> values = new ArrayList<T>();
+		execute(x, y, z, distance, new Executor<T>() {
+			@Override
+			public void execute(double x, double y, double z, T value) {
+				values.add(value);
+			}
+		});
+		return values;
+	}
+	
+	
+	/**
+	 * Executes the executor for every value within a given distance of a 
+	 * point, without collecting the values. Only nodes whose bounds are 
+	 * within the distance are visited.
+	 * 
+	 * @return the number of values executed.
+	 */
+	public int execute(final double x, final double y, final double z, final double distance, final Executor<T> executor){
+		return this.top.execute(x, y, z, distance, executor);
+	}
+	
+	
+	/**
+	 * Finds the k values closest to a point. Nodes are visited from the 
+	 * closest child outwards, and skipped once they are further away than 
+	 * the k'th closest value found so far.
+	 * 
+	 * @return at most k values, from the closest to the furthest. Of values
+	 * 		   at the same distance, those found first are kept.
+	 */
+	public List<T> getKNearest(final double x, final double y, final double z, final int k){
+		if(k < 1){
+			throw new IllegalArgumentException("Need at least one neighbour, not " + k);
+		}
+		PriorityQueue<Neighbour<T>> neighbours = new PriorityQueue<Neighbour<T>>(k, new Comparator<Neighbour<T>>() {
+			@Override
+			public int compare(Neighbour<T> o1, Neighbour<T> o2) {
+				/* Furthest first, and of equals the last found first. */
+				int result = Double.compare(o2.distance, o1.distance);
+				return result != 0 ? result : Long.compare(o2.order, o1.order);
+			}
+		});
+		this.top.getKNearest(x, y, z, k, neighbours, new long[1]);
+		
+		List<T> values = new ArrayList<T>(neighbours.size());
+		while(!neighbours.isEmpty()){
+			values.add(neighbours.poll().value);
+		}
+		Collections.reverse(values);
+		return values;
+	}
+	
+	
+	/**
+	 * Visitor for the values found by a query, so that no result collection
+	 * is needed.
+	 */
+	public interface Executor<T>{
+		public void execute(double x, double y, double z, T value);
+	}
+	
+	
+	private static class Neighbour<T>{
+		private final double distance;
+		private final long order;
+		private final T value;
+		
+		private Neighbour(double distance, long order, T value) {
+			this.distance = distance;
+			this.order = order;
+			this.value = value;
+		}
 	}
 
 	
@@ -251,6 +446,163 @@ public class OcTree<T> implements Serializable {
 			}
 		}
 
+		/**
+		 * Builds the subtree of the points order[from] to order[to-1]. A node
+		 * is only split if it holds more than one distinct point, exactly as
+		 * with repeated calls to {@link #put(double, double, double, Object)}.
+		 * 
+		 * @return the number of values added.
+		 */
+		private int build(int[] order, int from, int to, int[] scratch,
+				double[] x, double[] y, double[] z, List<T> values){
+			if(from == to){
+				return 0;
+			}
+			int first = order[from];
+			boolean distinct = false;
+			for(int i = from + 1; i < to && !distinct; i++){
+				int point = order[i];
+				distinct = x[point] != x[first] || y[point] != y[first] || z[point] != z[first];
+			}
+			
+			if(!distinct){
+				this.leaf = new Leaf<T>(x[first], y[first], z[first], values.get(first));
+				int added = 1;
+				for(int i = from + 1; i < to; i++){
+					T value = values.get(order[i]);
+					if(!this.leaf.values.contains(value)){
+						this.leaf.values.add(value);
+						added++;
+					}
+				}
+				return added;
+			}
+			
+			this.split();
+			
+			/* Group the points per child. After the Morton sort they are 
+			 * normally grouped already, unless rounding put a point that is 
+			 * very close to a centre plane in a different octant. */
+			int[] starts = new int[9];
+			boolean grouped = true;
+			int previous = 0;
+			for(int i = from; i < to; i++){
+				int point = order[i];
+				int child = getChildIndex(x[point], y[point], z[point]);
+				grouped &= child >= previous;
+				previous = child;
+				starts[child + 1]++;
+			}
+			for(int i = 0; i < 8; i++){
+				starts[i+1] += starts[i];
+			}
+			if(!grouped){
+				int[] next = starts.clone();
+				for(int i = from; i < to; i++){
+					int point = order[i];
+					scratch[from + next[getChildIndex(x[point], y[point], z[point])]++] = point;
+				}
+				System.arraycopy(scratch, from, order, from, to - from);
+			}
+			
+			int added = 0;
+			for(int i = 0; i < 8; i++){
+				added += getChild(i).build(order, from + starts[i], from + starts[i+1], scratch, x, y, z, values);
+			}
+			return added;
+		}
+		
+		
+		private int execute(final double x, final double y, final double z, final double distance, final Executor<T> executor){
+			if(this.bounds.calcDistance(x, y, z) > distance){
+				return 0;
+			}
+			if(this.hasChildren){
+				int executed = 0;
+				for(int i = 0; i < 8; i++){
+					executed += getChild(i).execute(x, y, z, distance, executor);
+				}
+				return executed;
+			}
+			if(this.leaf != null && getDistance(this.leaf, x, y, z) <= distance){
+				for(T value : this.leaf.values){
+					executor.execute(this.leaf.x, this.leaf.y, this.leaf.z, value);
+				}
+				return this.leaf.values.size();
+			}
+			return 0;
+		}
+		
+		
+		private void getKNearest(final double x, final double y, final double z, final int k, 
+				PriorityQueue<Neighbour<T>> neighbours, long[] order){
+			if(this.hasChildren){
+				/* Visit the children from the closest one outwards. */
+				double[] distances = new double[8];
+				int[] children = new int[8];
+				for(int i = 0; i < 8; i++){
+					children[i] = i;
+					distances[i] = getChild(i).bounds.calcDistance(x, y, z);
+				}
+				for(int i = 1; i < 8; i++){
+					int child = children[i];
+					int j = i - 1;
+					while(j >= 0 && distances[children[j]] > distances[child]){
+						children[j+1] = children[j];
+						j--;
+					}
+					children[j+1] = child;
+				}
+				for(int i = 0; i < 8; i++){
+					if(neighbours.size() == k && distances[children[i]] > neighbours.peek().distance){
+						break;
+					}
+					getChild(children[i]).getKNearest(x, y, z, k, neighbours, order);
+				}
+			} else if(this.leaf != null){
+				double distance = getDistance(this.leaf, x, y, z);
+				for(T value : this.leaf.values){
+					if(neighbours.size() < k){
+						neighbours.add(new Neighbour<T>(distance, order[0]++, value));
+					} else if(distance < neighbours.peek().distance){
+						neighbours.poll();
+						neighbours.add(new Neighbour<T>(distance, order[0]++, value));
+					}
+				}
+			}
+		}
+		
+		
+		private static double getDistance(Leaf<?> leaf, final double x, final double y, final double z){
+			return Math.sqrt(
+					Math.pow(leaf.x - x, 2) +
+					Math.pow(leaf.y - y, 2) +
+					Math.pow(leaf.z - z, 2));
+		}
+		
+		
+		/* The octant of the point, with the x-bit first, as in the Morton code. */
+		private int getChildIndex(final double x, final double y, final double z){
+			return (x < this.bounds.centerX ? 0 : 4)
+					| (y < this.bounds.centerY ? 0 : 2)
+					| (z < this.bounds.centerZ ? 0 : 1);
+		}
+		
+		
+		private Node<T> getChild(int index){
+			switch (index) {
+			case 0: return this.lowerSouthWest;
+			case 1: return this.upperSouthWest;
+			case 2: return this.lowerNorthWest;
+			case 3: return this.upperNorthWest;
+			case 4: return this.lowerSouthEast;
+			case 5: return this.upperSouthEast;
+			case 6: return this.lowerNorthEast;
+			default: return this.upperNorthEast;
+			}
+		}
+		
+		
 		private Node<T> getChild(final double x, final double y, final double z){
 			if(this.hasChildren){
 				if(x < this.bounds.centerX){
@@ -0,0 +1,220 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.up.acceleration.DigicoreRecordCache;
+import org.matsim.up.acceleration.DigicoreRecordCache.Column;
+import org.matsim.up.acceleration.DigicoreRecordReader;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
+
+/**
+ * Populates a {@link DigiGrid3D} from raw accelerometer records using
+ * multiple threads. An (uncompressed) raw file is split into byte ranges
+ * that start and end on line boundaries, and each range is memory mapped and
+ * parsed by the grid's {@link DigicoreRecordReader}. A
+ * {@link DigicoreRecordCache} is simply split into ranges of records. The
+ * ranges are processed on a {@link ForkJoinPool}, and every worker bins its
+ * records into its own {@link FCCCellStore}, so no synchronisation is needed
+ * while parsing. The partial counts are added to the grid once all the
+ * workers are done, i.e. before the grid can be ranked.
+ *
+ * @author jwjoubert
+ */
+class ParallelGridPopulator {
+	final private static Logger LOG = Logger.getLogger(ParallelGridPopulator.class);
+	final private static int SCAN_BUFFER_SIZE = 8192;
+
+	private final DigiGrid3D grid;
+	private final int numberOfThreads;
+
+	ParallelGridPopulator(DigiGrid3D grid, int numberOfThreads) {
+		this.grid = grid;
+		this.numberOfThreads = numberOfThreads;
+	}
+
+
+	void populate(final String filename){
+		LOG.info("Populating grid from " + filename + " using " + numberOfThreads + " threads...");
+		final Counter counter = new Counter("   lines # ");
+
+		long[] boundaries;
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)){
+			boundaries = getLineAlignedBoundaries(channel, numberOfThreads);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + filename);
+		}
+
+		final DigicoreRecordReader reader = grid.getRecordReader();
+		List<Callable<PartialCounts>> tasks = new ArrayList<>();
+		for(int i = 0; i < boundaries.length - 1; i++){
+			final long start = boundaries[i];
+			final long end = boundaries[i+1];
+			tasks.add(new Callable<PartialCounts>() {
+				@Override
+				public PartialCounts call() throws Exception {
+					PartialCounts partial = new PartialCounts(counter);
+					reader.read(filename, start, end, partial);
+					return partial;
+				}
+			});
+		}
+		run(tasks, filename);
+		counter.printCounter();
+	}
+
+
+	/**
+	 * Populates the grid from the given columns (x, y, and z-value, in that
+	 * order) of a record cache.
+	 */
+	void populate(final DigicoreRecordCache cache, final Column... columns){
+		LOG.info("Populating grid from " + cache.getFilename() + " using " + numberOfThreads + " threads...");
+		final Counter counter = new Counter("   records # ");
+		List<Callable<PartialCounts>> tasks = new ArrayList<>();
+		long size = cache.size();
+		for(int i = 0; i < numberOfThreads; i++){
+			final long from = size / numberOfThreads * i;
+			final long to = i == numberOfThreads - 1 ? size : size / numberOfThreads * (i + 1);
+			tasks.add(new Callable<PartialCounts>() {
+				@Override
+				public PartialCounts call() throws Exception {
+					PartialCounts partial = new PartialCounts(counter);
+					cache.read(from, to, partial, columns);
+					return partial;
+				}
+			});
+		}
+		run(tasks, cache.getFilename());
+		counter.printCounter();
+	}
+
+
+	private void run(List<Callable<PartialCounts>> tasks, String source){
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		List<Future<PartialCounts>> futures = new ArrayList<>();
+		for(Callable<PartialCounts> task : tasks){
+			futures.add(pool.submit(task));
+		}
+
+		/* Merge the partial counts in a fixed order so the result is
+		 * independent of the order in which workers finish. */
+		long outside = 0;
+		try{
+			for(Future<PartialCounts> future : futures){
+				PartialCounts partial = future.get();
+				grid.addCounts(partial.cells, partial.total);
+				outside += partial.outside;
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot populate grid from " + source);
+		} finally{
+			pool.shutdown();
+		}
+		if(outside > 0){
+			LOG.warn("A total of " + outside + " records fell outside the grid and were ignored.");
+		}
+		LOG.info("Done populating grid.");
+	}
+
+
+	/**
+	 * Splits the file into (roughly) equal byte ranges, each starting at the
+	 * beginning of a line.
+	 *
+	 * @return the <code>chunks+1</code> boundaries, the first being zero and
+	 * 		   the last the size of the file.
+	 */
+	static long[] getLineAlignedBoundaries(FileChannel channel, int chunks) throws IOException{
+		long size = channel.size();
+		long[] boundaries = new long[chunks + 1];
+		boundaries[chunks] = size;
+		ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+		for(int i = 1; i < chunks; i++){
+			long position = Math.max(size / chunks * i, boundaries[i-1]);
+			boundaries[i] = getNextLineStart(channel, position, buffer);
+		}
+		return boundaries;
+	}
+
+
+	private static long getNextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException{
+		if(position == 0){
+			return 0;
+		}
+		/* Start with the preceding byte in case we are already at a new line. */
+		long scan = position - 1;
+		long size = channel.size();
+		while(scan < size){
+			buffer.clear();
+			int read = channel.read(buffer, scan);
+			if(read <= 0){
+				break;
+			}
+			for(int i = 0; i < read; i++){
+				if(buffer.get(i) == '\n'){
+					return scan + i + 1;
+				}
+			}
+			scan += read;
+		}
+		return size;
+	}
+
+
+	/** Thread-confined counts of a single range. */
+	private class PartialCounts implements RecordHandler{
+		private final FCCCellStore cells = new FCCCellStore();
+		private final Counter counter;
+		private double total = 0.0;
+		private long outside = 0;
+
+		private PartialCounts(Counter counter) {
+			this.counter = counter;
+		}
+
+		@Override
+		public void handleRecord(double[] values) {
+			double added = grid.addRecord(cells, values[0], values[1], values[2]);
+			if(added > 0.0){
+				total += added;
+			} else{
+				outside++;
+			}
+			counter.incCounter();
+		}
+	}
+
+}
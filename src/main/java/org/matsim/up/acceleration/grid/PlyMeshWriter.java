@@ -0,0 +1,270 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.jzy3d.colors.Color;
+
+/**
+ * Writes the risk-class surfaces of a {@link PolyhedraMesh} as an indexed 
+ * triangle mesh in binary (little-endian) PLY format, which most 3D tools
+ * can open. Each quadrilateral face becomes two triangles. Corners are 
+ * shared between faces, and are written only once per risk class, so that 
+ * every vertex can carry the colour of its class. Corners are matched on 
+ * integer keys of their (half-scale) lattice coordinates, so no 
+ * floating-point comparison is needed. The keys are wide enough for the
+ * corners of any cell of the {@link FCCLattice}.
+ * 
+ * <p>The vertices and faces are streamed through a single buffer to a 
+ * {@link FileChannel}. Apart from the mesh itself, only the index of the 
+ * distinct vertices is kept in memory.</p>
+ *
+ * @author jwjoubert
+ */
+public class PlyMeshWriter {
+	final private static Logger LOG = Logger.getLogger(PlyMeshWriter.class);
+	final private static int BUFFER_SIZE = 1 << 20;
+	/* Corners are at twice the lattice coordinates, give or take two. */
+	final private static int COORDINATE_BITS = FCCLattice.KEY_BITS + 2;
+	final private static long COORDINATE_OFFSET = 1L << (COORDINATE_BITS - 1);
+	final private static long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1L;
+	final private static int VERTEX_BYTES = 3*4 + 3;
+	final private static int FACE_BYTES = 1 + 3*4;
+
+	private final PolyhedraMesh mesh;
+	
+	private final VertexIndex vertices = new VertexIndex();
+	
+
+	public PlyMeshWriter(PolyhedraMesh mesh) {
+		this.mesh = mesh;
+		for(int face = 0; face < mesh.getNumberOfFaces(); face++){
+			for(int corner = 0; corner < 4; corner++){
+				vertices.getOrCreateVertex(getClassKey(face, corner), getCornerKey(face, corner));
+			}
+		}
+	}
+
+
+	/**
+	 * @return the number of distinct vertices, i.e. (class, corner) pairs.
+	 */
+	public int getNumberOfVertices(){
+		return vertices.size();
+	}
+
+
+	/**
+	 * Packs the colour of the face's class and the corner's x-coordinate 
+	 * into a (non-negative) key.
+	 */
+	private long getClassKey(int face, int corner){
+		return (long) getColourIndex(mesh.getRiskClass(face)) << COORDINATE_BITS | getCoordinate(face, corner, 0);
+	}
+
+
+	/**
+	 * Packs the corner's y and z-coordinates into a (non-negative) key.
+	 */
+	private long getCornerKey(int face, int corner){
+		return getCoordinate(face, corner, 1) << COORDINATE_BITS | getCoordinate(face, corner, 2);
+	}
+
+
+	private long getCoordinate(int face, int corner, int axis){
+		long coordinate = mesh.getCornerCoordinate(face, corner, axis) + COORDINATE_OFFSET;
+		if(coordinate < 0 || coordinate > COORDINATE_MASK){
+			throw new IllegalArgumentException("Corner coordinate " + mesh.getCorner(face, corner, axis) + " is too far from the origin to export.");
+		}
+		return coordinate;
+	}
+
+
+	private static int getColourIndex(int riskClass){
+		return Math.min(riskClass, DigiGrid3D.DIGI_RISK_COLOURS.length - 1);
+	}
+
+
+	public void write(String filename){
+		LOG.info("Writing " + vertices.size() + " vertices and " + 2*mesh.getNumberOfFaces() + " triangles to " + filename);
+		StringBuilder header = new StringBuilder();
+		header.append("ply\n");
+		header.append("format binary_little_endian 1.0\n");
+		header.append("comment risk classes of a DigiGrid3D, with scale " + 2*mesh.getUnit() + "\n");
+		header.append("element vertex " + vertices.size() + "\n");
+		header.append("property float x\n");
+		header.append("property float y\n");
+		header.append("property float z\n");
+		header.append("property uchar red\n");
+		header.append("property uchar green\n");
+		header.append("property uchar blue\n");
+		header.append("element face " + 2*mesh.getNumberOfFaces() + "\n");
+		header.append("property list uchar int vertex_indices\n");
+		header.append("end_header\n");
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		try(FileChannel channel = FileChannel.open(Paths.get(filename), 
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+			buffer.put(header.toString().getBytes(StandardCharsets.US_ASCII));
+			
+			/* Vertices, in the order of their index. */
+			double unit = mesh.getUnit();
+			for(int vertex = 0; vertex < vertices.size(); vertex++){
+				if(buffer.remaining() < VERTEX_BYTES){
+					flush(buffer, channel);
+				}
+				long classKey = vertices.getClassKey(vertex);
+				long cornerKey = vertices.getCornerKey(vertex);
+				buffer.putFloat((float) (getCoordinate(classKey, 0)*unit));
+				buffer.putFloat((float) (getCoordinate(cornerKey, 1)*unit));
+				buffer.putFloat((float) (getCoordinate(cornerKey, 0)*unit));
+				Color colour = DigiGrid3D.DIGI_RISK_COLOURS[(int) (classKey >>> COORDINATE_BITS)];
+				int rgb = DigiGrid3D.getRgb(colour);
+				buffer.put((byte) (rgb >> 16)).put((byte) (rgb >> 8)).put((byte) rgb);
+			}
+
+			/* Two triangles per face, keeping the corners' orientation. */
+			int[] indices = new int[4];
+			for(int face = 0; face < mesh.getNumberOfFaces(); face++){
+				if(buffer.remaining() < 2*FACE_BYTES){
+					flush(buffer, channel);
+				}
+				for(int corner = 0; corner < 4; corner++){
+					indices[corner] = vertices.getVertex(getClassKey(face, corner), getCornerKey(face, corner));
+				}
+				buffer.put((byte) 3).putInt(indices[0]).putInt(indices[1]).putInt(indices[2]);
+				buffer.put((byte) 3).putInt(indices[0]).putInt(indices[2]).putInt(indices[3]);
+			}
+			flush(buffer, channel);
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot write to " + filename);
+		}
+		LOG.info("Done writing mesh.");
+	}
+
+
+	/* @return the coordinate packed in the given position, counting from the right. */
+	private static long getCoordinate(long key, int position){
+		return (key >>> position*COORDINATE_BITS & COORDINATE_MASK) - COORDINATE_OFFSET;
+	}
+
+
+	private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException{
+		buffer.flip();
+		while(buffer.hasRemaining()){
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+
+	/**
+	 * Primitive open-addressing index of the distinct vertices, each 
+	 * identified by a pair of keys, since the class and three coordinates 
+	 * do not fit in a single <code>long</code>. Vertices are numbered from 
+	 * zero in the order in which they are created.
+	 */
+	private final static class VertexIndex {
+		private long[] classKeys = new long[1024];
+		private long[] cornerKeys = new long[1024];
+		private int size = 0;
+
+		/* Linear probing, holding vertex+1 (0 is empty). */
+		private int[] table = new int[2048];
+		private int mask = table.length - 1;
+
+		int size(){
+			return size;
+		}
+
+		long getClassKey(int vertex){
+			return classKeys[vertex];
+		}
+
+		long getCornerKey(int vertex){
+			return cornerKeys[vertex];
+		}
+
+		/* @return the vertex, or -1 if it has not been created. */
+		int getVertex(long classKey, long cornerKey){
+			int slot = hash(classKey, cornerKey) & mask;
+			int entry;
+			while((entry = table[slot]) != 0){
+				if(classKeys[entry - 1] == classKey && cornerKeys[entry - 1] == cornerKey){
+					return entry - 1;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		int getOrCreateVertex(long classKey, long cornerKey){
+			int slot = hash(classKey, cornerKey) & mask;
+			int entry;
+			while((entry = table[slot]) != 0){
+				if(classKeys[entry - 1] == classKey && cornerKeys[entry - 1] == cornerKey){
+					return entry - 1;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if(size == classKeys.length){
+				grow();
+				return getOrCreateVertex(classKey, cornerKey);
+			}
+			int vertex = size++;
+			classKeys[vertex] = classKey;
+			cornerKeys[vertex] = cornerKey;
+			table[slot] = vertex + 1;
+			return vertex;
+		}
+
+		private void grow(){
+			int capacity = classKeys.length << 1;
+			classKeys = Arrays.copyOf(classKeys, capacity);
+			cornerKeys = Arrays.copyOf(cornerKeys, capacity);
+			table = new int[capacity << 1];
+			mask = table.length - 1;
+			for(int vertex = 0; vertex < size; vertex++){
+				int slot = hash(classKeys[vertex], cornerKeys[vertex]) & mask;
+				while(table[slot] != 0){
+					slot = (slot + 1) & mask;
+				}
+				table[slot] = vertex + 1;
+			}
+		}
+
+		/* Spread both keys over all the bits (Fibonacci hashing). */
+		private static int hash(long classKey, long cornerKey){
+			long h = (classKey * 0x9E3779B97F4A7C15L ^ cornerKey) * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * The surface mesh of the occupied cells (dodecahedra) of a ranked 
+ * {@link DigiGrid3D}. A face between two occupied cells of the same risk 
+ * class can never be seen, so only the faces on the boundary of each risk 
+ * class are kept: those between cells of different classes, and those 
+ * facing an empty cell. Each kept face is a quadrilateral, with its corners
+ * ordered counter-clockwise when seen from outside its cell.
+ * 
+ * <p>For large grids a coarser level of detail can be used, in which the 
+ * cells are first binned into the dodecahedra of a lattice with a multiple 
+ * of the grid's scale. A coarse cell gets the highest risk class of the 
+ * cells in it, so that high-risk regions remain visible.</p>
+ * 
+ * <p>All the corners of the dodecahedra lie on a lattice with half the 
+ * scale, so corners are kept as integer coordinates in units of half the
+ * (coarse) scale. Shared corners can so be matched exactly.</p>
+ *
+ * @author jwjoubert
+ */
+public class PolyhedraMesh {
+	final private static Logger LOG = Logger.getLogger(PolyhedraMesh.class);
+
+	/* The directions of the twelve neighbouring cells (in units of the 
+	 * scale), one for each face, and the four corners of each face, relative
+	 * to the centroid, in units of half the scale. Both are taken from the
+	 * unit FCCPolyhedron, in the same face order. */
+	final private static int[][] NEIGHBOURS = new int[FCCPolyhedron.NFACES][];
+	final private static int[][] CORNERS = new int[FCCPolyhedron.NFACES][];
+	static{
+		for(int face = 0; face < FCCPolyhedron.NFACES; face++){
+			CORNERS[face] = getCorners(face);
+			
+			/* The neighbour lies where the two corners on the axes add up. */
+			NEIGHBOURS[face] = new int[3];
+			for(int axis = 0; axis < 3; axis++){
+				NEIGHBOURS[face][axis] = (CORNERS[face][axis] + CORNERS[face][6 + axis]) / 2;
+			}
+		}
+	}
+
+	private final double unit;
+	private int[] corners = new int[12*1024];
+	private byte[] riskClasses = new byte[1024];
+	private int faces = 0;
+
+
+	private PolyhedraMesh(double scale) {
+		this.unit = scale / 2.0;
+	}
+
+
+	/**
+	 * Builds the mesh of the boundary faces of the grid's risk classes.
+	 * 
+	 * @param coarsening the scale of the mesh, as a multiple of the grid's 
+	 * 		  scale. Use 1 for the grid's own cells.
+	 */
+	public static PolyhedraMesh build(DigiGrid3D grid, int coarsening){
+		if(!grid.isRanked()){
+			throw new IllegalArgumentException("Cannot build the mesh of a grid that has not been ranked.");
+		}
+		if(coarsening < 1){
+			throw new IllegalArgumentException("Cannot coarsen the grid by " + coarsening);
+		}
+		FCCCellStore store = coarsening == 1 ? grid.cells : coarsen(grid, coarsening);
+		PolyhedraMesh mesh = new PolyhedraMesh(grid.getScale()*coarsening);
+
+		long culled = 0;
+		for(int cell = store.nextOccupiedCell(0); cell >= 0; cell = store.nextOccupiedCell(cell+1)){
+			int riskClass = store.getRiskClass(cell);
+			if(riskClass == FCCCellStore.UNRATED){
+				continue;
+			}
+			long key = store.getKey(cell);
+			long a = FCCLattice.getKeyA(key);
+			long b = FCCLattice.getKeyB(key);
+			long c = FCCLattice.getKeyC(key);
+			for(int face = 0; face < NEIGHBOURS.length; face++){
+				int[] d = NEIGHBOURS[face];
+				if(getRiskClass(store, FCCLattice.packKey(a + d[0], b + d[1], c + d[2])) == riskClass){
+					culled++;
+				} else{
+					mesh.addFace(a, b, c, face, riskClass);
+				}
+			}
+		}
+		LOG.info("Mesh has " + mesh.faces + " faces (" + culled + " hidden faces culled) at scale " + 2*mesh.unit);
+		return mesh;
+	}
+
+
+	/* The highest risk class of the cells in each dodecahedron of the coarse lattice. */
+	private static FCCCellStore coarsen(DigiGrid3D grid, int coarsening){
+		FCCLattice coarse = new FCCLattice(grid.getScale()*coarsening);
+		FCCCellStore store = new FCCCellStore();
+		for(int cell = grid.cells.nextOccupiedCell(0); cell >= 0; cell = grid.cells.nextOccupiedCell(cell+1)){
+			long key = grid.cells.getKey(cell);
+			int coarseCell = store.getOrCreateCell(coarse.getCellKey(
+					grid.lattice.getKeyX(key), grid.lattice.getKeyY(key), grid.lattice.getKeyZ(key)));
+			store.incrementCount(coarseCell, grid.cells.getCount(cell));
+			store.setRiskClass(coarseCell, Math.max(store.getRiskClass(coarseCell), grid.cells.getRiskClass(cell)));
+		}
+		return store;
+	}
+
+
+	/* @return the risk class of an occupied cell, or UNRATED for empty cells. */
+	private static int getRiskClass(FCCCellStore store, long key){
+		int cell = store.getCell(key);
+		if(cell < 0 || store.getCount(cell) <= 0.0){
+			return FCCCellStore.UNRATED;
+		}
+		return store.getRiskClass(cell);
+	}
+
+
+	/**
+	 * The corners of the face, ordered counter-clockwise when seen from 
+	 * outside. The face has a corner on each of the two axes along which 
+	 * the neighbour lies (the first and third corners), and two corners of
+	 * the (half-scale) cube in between.
+	 */
+	private static int[] getCorners(int face){
+		int[] corners = new int[12];
+		for(int corner = 0; corner < 4; corner++){
+			for(int axis = 0; axis < 3; axis++){
+				corners[3*corner + axis] = (int) Math.rint(2*FCCPolyhedron.getUnitCorner(face, corner, axis));
+			}
+		}
+
+		/* Swap the second and fourth corners if the normal points into the cell. */
+		int[] u = new int[3];
+		int[] v = new int[3];
+		int[] d = new int[3];
+		for(int axis = 0; axis < 3; axis++){
+			u[axis] = corners[3 + axis] - corners[axis];
+			v[axis] = corners[6 + axis] - corners[axis];
+			d[axis] = corners[axis] + corners[6 + axis];
+		}
+		int nx = u[1]*v[2] - u[2]*v[1];
+		int ny = u[2]*v[0] - u[0]*v[2];
+		int nz = u[0]*v[1] - u[1]*v[0];
+		if(nx*d[0] + ny*d[1] + nz*d[2] < 0){
+			for(int axis = 0; axis < 3; axis++){
+				int swap = corners[3 + axis];
+				corners[3 + axis] = corners[9 + axis];
+				corners[9 + axis] = swap;
+			}
+		}
+		return corners;
+	}
+
+
+	private void addFace(long a, long b, long c, int face, int riskClass){
+		if(faces == riskClasses.length){
+			riskClasses = Arrays.copyOf(riskClasses, 2*faces);
+			corners = Arrays.copyOf(corners, 24*faces);
+		}
+		int[] offsets = CORNERS[face];
+		int index = 12*faces;
+		for(int corner = 0; corner < 4; corner++){
+			corners[index++] = (int) (2*a) + offsets[3*corner];
+			corners[index++] = (int) (2*b) + offsets[3*corner + 1];
+			corners[index++] = (int) (2*c) + offsets[3*corner + 2];
+		}
+		riskClasses[faces++] = (byte) riskClass;
+	}
+
+
+	public int getNumberOfFaces(){
+		return this.faces;
+	}
+
+
+	public int getRiskClass(int face){
+		return this.riskClasses[face];
+	}
+
+
+	/**
+	 * @return the length of the integer corner coordinates, i.e. half the 
+	 * 		   scale of the mesh.
+	 */
+	public double getUnit(){
+		return this.unit;
+	}
+
+
+	/**
+	 * @param axis 0, 1 or 2 for the x, y, or z-coordinate.
+	 * @return the coordinate of one of the four corners of the face, in 
+	 * 		   units of {@link #getUnit()}.
+	 */
+	public int getCornerCoordinate(int face, int corner, int axis){
+		return this.corners[12*face + 3*corner + axis];
+	}
+
+
+	/**
+	 * @return the coordinate of the corner, in grid coordinates.
+	 */
+	public double getCorner(int face, int corner, int axis){
+		return getCornerCoordinate(face, corner, axis)*unit;
+	}
+
+
+	/**
+	 * Writes the faces in the same format as the <code>polyhedra.csv</code> 
+	 * snapshot, i.e. the corners of each face followed by a line of 
+	 * <code>NA</code> values.
+	 */
+	public void write(String filename){
+		LOG.info("Writing " + faces + " mesh faces to " + filename);
+		BufferedWriter bw = IOUtils.getBufferedWriter(filename);
+		try{
+			bw.write("x,y,z,poly,class");
+			bw.newLine();
+			for(int face = 0; face < faces; face++){
+				for(int corner = 0; corner < 4; corner++){
+					bw.write(String.format("%.2f,%.2f,%.2f,%d,%d\n", 
+							getCorner(face, corner, 0), getCorner(face, corner, 1), getCorner(face, corner, 2), 
+							face + 1, riskClasses[face]));
+				}
+				bw.write("NA,NA,NA,NA,NA");
+				bw.newLine();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot write to " + filename);
+		} finally{
+			try {
+				bw.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Cannot close " + filename);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+
+/**
+ * A dense table of the risk classes of a ranked {@link DigiGrid3D}, compiled
+ * once for scoring. The table covers the bounding box of the occupied cells
+ * and is indexed by the integer lattice coordinates (a, b, c) of a cell, so
+ * each voxel is exactly one dodecahedron and no voxel straddles two cells.
+ * Only lattice points with an even a+b+c exist, so every row along the
+ * a-axis holds only every second point. Classifying a record is then the
+ * closed-form {@link FCCLattice} rounding and a single byte read, without
+ * probing the cell store's hash table.
+ *
+ * <p>Lattice points without observations inside the table are filled, when
+ * the table is compiled, with the class of the occupied cell closest to the
+ * point, so records in the holes of the grid, often the rare and risky ones,
+ * are also classified with a single read. Only records outside the table
+ * fall back to {@link DigiGrid3D#getClosestOccupiedCell(double, double, double)}.</p>
+ *
+ * @author jwjoubert
+ */
+public class RiskVoxelTable {
+	/* Marks a lattice point without an occupied cell. */
+	private final static byte NO_CELL = -2;
+
+	private final DigiGrid3D grid;
+	private final long a0, b0, c0;
+	private final int nA, nB, nC;
+	private final int rowLength;
+	private final byte[] classes;
+
+
+	/**
+	 * Compiles the table from the current risk classes of the grid's cells.
+	 * The table is not updated when the grid changes afterwards.
+	 */
+	RiskVoxelTable(DigiGrid3D grid) {
+		FCCCellStore cells = grid.cells;
+		if(cells == null || cells.getNumberOfOccupiedCells() == 0){
+			throw new IllegalArgumentException("Cannot compile a table of an empty grid.");
+		}
+		this.grid = grid;
+
+		long minA = Long.MAX_VALUE, minB = Long.MAX_VALUE, minC = Long.MAX_VALUE;
+		long maxA = Long.MIN_VALUE, maxB = Long.MIN_VALUE, maxC = Long.MIN_VALUE;
+		for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+			long key = cells.getKey(cell);
+			minA = Math.min(minA, FCCLattice.getKeyA(key));
+			minB = Math.min(minB, FCCLattice.getKeyB(key));
+			minC = Math.min(minC, FCCLattice.getKeyC(key));
+			maxA = Math.max(maxA, FCCLattice.getKeyA(key));
+			maxB = Math.max(maxB, FCCLattice.getKeyB(key));
+			maxC = Math.max(maxC, FCCLattice.getKeyC(key));
+		}
+		this.a0 = minA;
+		this.b0 = minB;
+		this.c0 = minC;
+		this.nA = (int) (maxA - minA + 1);
+		this.nB = (int) (maxB - minB + 1);
+		this.nC = (int) (maxC - minC + 1);
+		this.rowLength = nA / 2 + 1;
+		long size = (long) rowLength*nB*nC;
+		if(size > Integer.MAX_VALUE - 8){
+			throw new IllegalArgumentException("The grid's occupied cells span too many (" + size
+					+ ") lattice points for a table. Use a larger scale.");
+		}
+
+		this.classes = new byte[(int) size];
+		Arrays.fill(this.classes, NO_CELL);
+		for(int cell = cells.nextOccupiedCell(0); cell >= 0; cell = cells.nextOccupiedCell(cell+1)){
+			long key = cells.getKey(cell);
+			classes[getIndex(FCCLattice.getKeyA(key), FCCLattice.getKeyB(key), FCCLattice.getKeyC(key))] =
+					(byte) cells.getRiskClass(cell);
+		}
+		fillEmptyCells();
+	}
+
+
+	/* Every lattice point (with an even a+b+c) gets the class of the closest occupied cell. */
+	private void fillEmptyCells(){
+		LinearOcTree tree = grid.getOcTree();
+		for(long c = c0; c < c0 + nC; c++){
+			for(long b = b0; b < b0 + nB; b++){
+				for(long a = a0 + ((a0 + b + c) & 1); a < a0 + nA; a += 2){
+					int index = getIndex(a, b, c);
+					if(classes[index] == NO_CELL){
+						long key = FCCLattice.packKey(a, b, c);
+						int cell = tree.get(grid.lattice.getKeyX(key), grid.lattice.getKeyY(key), grid.lattice.getKeyZ(key));
+						classes[index] = (byte) grid.getCellRisk(cell);
+					}
+				}
+			}
+		}
+	}
+
+
+	/* Points in a row differ by two in a, so halving keeps them apart. */
+	private int getIndex(long a, long b, long c){
+		return (int) (((c - c0)*nB + (b - b0))*rowLength + ((a - a0) >> 1));
+	}
+
+
+	/**
+	 * @return the risk class of the (occupied) cell containing the given
+	 * 		   record or, if the cell is empty, of the occupied cell closest
+	 * 		   to its centroid, as with {@link DigiGrid3D#getCellRisk(int)}.
+	 */
+	public int getRiskClass(double x, double y, double z){
+		long key = grid.getCellKey(x, y, z);
+		if(key != FCCLattice.NO_KEY){
+			long a = FCCLattice.getKeyA(key) - a0;
+			long b = FCCLattice.getKeyB(key) - b0;
+			long c = FCCLattice.getKeyC(key) - c0;
+			if(a >= 0 && a < nA && b >= 0 && b < nB && c >= 0 && c < nC){
+				byte riskClass = classes[(int) ((c*nB + b)*rowLength + (a >> 1))];
+				if(riskClass != NO_CELL){
+					return riskClass;
+				}
+			}
+		}
+		int cell = grid.getClosestOccupiedCell(x, y, z);
+		return cell < 0 ? FCCCellStore.UNRATED : grid.getCellRisk(cell);
+	}
+
+
+	/**
+	 * Classifies a batch of records.
+	 *
+	 * @param classes filled with the risk class of each record.
+	 */
+	public void getRiskClasses(double[] x, double[] y, double[] z, int[] classes){
+		if(x.length != classes.length || y.length != classes.length || z.length != classes.length){
+			throw new IllegalArgumentException("Need the same number of coordinates and classes.");
+		}
+		for(int i = 0; i < classes.length; i++){
+			classes[i] = getRiskClass(x[i], y[i], z[i]);
+		}
+	}
+
+
+	/**
+	 * @return the number of voxels, i.e. bytes, in the table.
+	 */
+	public int size(){
+		return this.classes.length;
+	}
+
+}
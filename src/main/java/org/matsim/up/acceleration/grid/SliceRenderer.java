@@ -0,0 +1,292 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Renders horizontal slices through a ranked {@link DigiGrid3D} to PNG 
+ * images, without the OpenGL context that {@link DigiGrid3D.Visual#SLICE}
+ * needs. Since every cell (dodecahedron) is the region closest to its
+ * lattice point, the cross-section at a given depth is rasterised by simply
+ * finding the cell of each pixel's centre. Pixels are coloured by the risk
+ * class of their cell, using the same colours as the 3D views, and borders 
+ * are drawn where neighbouring pixels fall in different occupied cells. 
+ * Pixels in cells without observations are left white.
+ * 
+ * <p>The grid is only read, so many slices can be rendered concurrently, see
+ * {@link #renderSlices(double, double, double, String)}.</p>
+ *
+ * @author jwjoubert
+ */
+public class SliceRenderer {
+	final private static Logger LOG = Logger.getLogger(SliceRenderer.class);
+	final private static int BACKGROUND = 0xFFFFFFFF;
+	/* The most decimals used to name a slice by its depth. */
+	final private static int MAX_DECIMALS = 6;
+	final private static int BORDER = DigiGrid3D.getRgb(DigiGrid3D.DIGI_GRAY);
+	final private static int[] RISK_COLOURS = new int[DigiGrid3D.DIGI_RISK_COLOURS.length];
+	static{
+		for(int riskClass = 0; riskClass < RISK_COLOURS.length; riskClass++){
+			RISK_COLOURS[riskClass] = DigiGrid3D.getRgb(DigiGrid3D.DIGI_RISK_COLOURS[riskClass]);
+		}
+	}
+
+	private final DigiGrid3D grid;
+	private final double minX;
+	private final double maxY;
+	private final double pixelSize;
+	private final int width;
+	private final int height;
+	private boolean drawBorders = true;
+	private int numberOfThreads = 1;
+
+
+	/**
+	 * Renders the visual bounding box of the grid's x and y-values (see 
+	 * {@link DigiGrid3D#setVisualBoundingBox(float[])}).
+	 * 
+	 * @param pixelSize the width (and height) of a pixel, in the units of the
+	 * 		  grid, e.g. milli-g.
+	 */
+	public SliceRenderer(DigiGrid3D grid, double pixelSize) {
+		this(grid, DigiGrid3D.BOUNDING_BOX_X_MIN, DigiGrid3D.BOUNDING_BOX_X_MAX, 
+				DigiGrid3D.BOUNDING_BOX_Y_MIN, DigiGrid3D.BOUNDING_BOX_Y_MAX, pixelSize);
+	}
+
+
+	public SliceRenderer(DigiGrid3D grid, double minX, double maxX, double minY, double maxY, double pixelSize) {
+		if(!grid.isRanked()){
+			throw new IllegalArgumentException("Cannot render the slices of a grid that has not been ranked.");
+		}
+		if(pixelSize <= 0.0 || maxX <= minX || maxY <= minY){
+			throw new IllegalArgumentException("Cannot render a slice of " + (maxX - minX) + " by " + (maxY - minY) + " with pixels of " + pixelSize);
+		}
+		this.grid = grid;
+		this.minX = minX;
+		this.maxY = maxY;
+		this.pixelSize = pixelSize;
+		this.width = (int) Math.ceil((maxX - minX) / pixelSize);
+		this.height = (int) Math.ceil((maxY - minY) / pixelSize);
+	}
+
+
+	public void setDrawBorders(boolean drawBorders){
+		this.drawBorders = drawBorders;
+	}
+
+
+	/**
+	 * Sets the number of slices rendered concurrently. The default is a 
+	 * single thread.
+	 */
+	public void setNumberOfThreads(int numberOfThreads){
+		if(numberOfThreads < 1){
+			throw new IllegalArgumentException("Need at least one thread, not " + numberOfThreads);
+		}
+		this.numberOfThreads = numberOfThreads;
+	}
+
+
+	public int getWidth(){
+		return this.width;
+	}
+
+
+	public int getHeight(){
+		return this.height;
+	}
+
+
+	/** @return the x-value at the centre of the pixel column. */
+	double getX(int column){
+		return minX + (column + 0.5)*pixelSize;
+	}
+
+
+	/** @return the y-value at the centre of the pixel row, rows running down. */
+	double getY(int row){
+		return maxY - (row + 0.5)*pixelSize;
+	}
+
+
+	/**
+	 * Rasterises the cross-section of the grid at the given depth, i.e. the 
+	 * z-value of the records.
+	 */
+	public BufferedImage render(double depth){
+		/* The occupied cell of every pixel, or -1. */
+		int[] pixelCells = new int[width*height];
+		for(int row = 0; row < height; row++){
+			double y = getY(row);
+			for(int column = 0; column < width; column++){
+				int cell = grid.getClosestCell(getX(column), y, depth);
+				if(cell >= 0 && (grid.getCount(cell) <= 0.0 || grid.getCellRisk(cell) < 0)){
+					cell = -1;
+				}
+				pixelCells[row*width + column] = cell;
+			}
+		}
+
+		int[] rgb = new int[width*height];
+		for(int row = 0; row < height; row++){
+			for(int column = 0; column < width; column++){
+				int index = row*width + column;
+				int cell = pixelCells[index];
+				if(drawBorders && isBorder(pixelCells, row, column)){
+					rgb[index] = BORDER;
+				} else if(cell < 0){
+					rgb[index] = BACKGROUND;
+				} else{
+					rgb[index] = RISK_COLOURS[Math.min(grid.getCellRisk(cell), RISK_COLOURS.length - 1)];
+				}
+			}
+		}
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		image.setRGB(0, 0, width, height, rgb, 0, width);
+		return image;
+	}
+
+
+	/* A pixel is on a border if its right or lower neighbour is in another cell. */
+	private boolean isBorder(int[] pixelCells, int row, int column){
+		int cell = pixelCells[row*width + column];
+		if(column + 1 < width){
+			int right = pixelCells[row*width + column + 1];
+			if(right != cell){
+				return true;
+			}
+		}
+		if(row + 1 < height){
+			int below = pixelCells[(row + 1)*width + column];
+			if(below != cell){
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	public void write(double depth, String filename){
+		try {
+			ImageIO.write(render(depth), "png", new File(filename));
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot write to " + filename);
+		}
+	}
+
+
+	/**
+	 * Renders the slices from the start depth to (and including) the end 
+	 * depth, and writes each to <code>slice_DDDD.png</code> in the output 
+	 * folder, with the same names as the slices of 
+	 * {@link DigiGrid3D.Visual#SLICE}. Where the start or step is fractional,
+	 * the depth is given with as many decimals as needed, e.g.
+	 * <code>slice_1000.25.png</code>.
+	 * 
+	 * @return the files written, in order of depth.
+	 * @throws IllegalArgumentException if the step is too small to give each
+	 * 		   slice its own name.
+	 */
+	public List<String> renderSlices(double start, double end, double step, String outputFolder){
+		if(step <= 0.0){
+			throw new IllegalArgumentException("Cannot step through slices with step " + step);
+		}
+		File folder = new File(outputFolder);
+		if(!folder.exists() && !folder.mkdirs()){
+			throw new RuntimeException("Cannot create output folder " + outputFolder);
+		}
+		String prefix = outputFolder + (outputFolder.endsWith("/") ? "" : "/");
+		int slices = (int) Math.floor((end - start) / step + 1e-9) + 1;
+		int decimals = getDecimals(start, step);
+		String format = decimals == 0 ? "%sslice_%04.0f.png" : "%sslice_%0" + (5 + decimals) + "." + decimals + "f.png";
+		Set<String> names = new HashSet<String>();
+		for(int i = 0; i < slices; i++){
+			if(!names.add(String.format(format, prefix, start + i*step))){
+				throw new IllegalArgumentException("Step " + step + " is too small to name each slice by its depth.");
+			}
+		}
+		LOG.info("Rendering " + slices + " slices of " + width + "x" + height + " pixels using " + numberOfThreads + " threads...");
+
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		List<String> filenames = new ArrayList<String>();
+		List<Future<String>> futures = new ArrayList<Future<String>>();
+		for(int i = 0; i < slices; i++){
+			final double depth = start + i*step;
+			final String filename = String.format(format, prefix, depth);
+			futures.add(pool.submit(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					write(depth, filename);
+					return filename;
+				}
+			}));
+		}
+		try{
+			for(Future<String> future : futures){
+				filenames.add(future.get());
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot render slices to " + outputFolder);
+		} finally{
+			pool.shutdown();
+		}
+		LOG.info("Done rendering slices.");
+		return filenames;
+	}
+
+
+	/**
+	 * @return the fewest decimals, up to {@link #MAX_DECIMALS}, that show
+	 * 		   both the start and the step exactly.
+	 */
+	static int getDecimals(double start, double step){
+		double scale = 1.0;
+		for(int decimals = 0; decimals < MAX_DECIMALS; decimals++){
+			if(isWhole(start*scale) && isWhole(step*scale)){
+				return decimals;
+			}
+			scale *= 10.0;
+		}
+		return MAX_DECIMALS;
+	}
+
+
+	private static boolean isWhole(double value){
+		return Math.abs(value - Math.rint(value)) < 1e-6;
+	}
+
+}
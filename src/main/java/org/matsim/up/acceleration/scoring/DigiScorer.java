@@ -39,6 +39,8 @@
 package org.matsim.up.acceleration.scoring;
 
 import org.apache.log4j.Logger;
+import org.matsim.up.acceleration.DigicoreRecordReader;
+import org.matsim.up.acceleration.grid.RiskVoxelTable;
 
 /**
  * Basic interface to calculate the risk profile/score of a person, all based 
@@ -51,9 +53,62 @@ public interface DigiScorer {
 	
 	public void buildScoringModel(String filename);
 
+	/**
+	 * Implementations can use a {@link RiskProfilePipeline} to rate the 
+	 * individuals in files that are too large to keep in memory.
+	 */
 	public void rateIndividuals(String filename, String outputFolder);
 	
+	/**
+	 * Implementations should parse only the columns they need, using
+	 * {@link DigicoreRecordReader#parse(CharSequence, double[])}, rather
+	 * than splitting the whole record, and should look up the risk class in
+	 * a {@link RiskVoxelTable} compiled once from the ranked grid.
+	 */
 	public RISK_GROUP getRiskGroup(String record);
 	
+	/**
+	 * Classifies a single record from its already parsed grid values, i.e.
+	 * the three acceleration values for {@link DigiScorer_XYZ}, or the x and
+	 * y-acceleration and speed for {@link DigiScorer_XYSpeed}. Scorers that
+	 * are used with the batch methods, or with a {@link RiskProfilePipeline},
+	 * must override this. 
+	 * 
+	 * @throws UnsupportedOperationException if the scorer can only classify 
+	 * 		   the raw records.
+	 */
+	public default RISK_GROUP getRiskGroup(double x, double y, double z){
+		throw new UnsupportedOperationException(getClass().getName() 
+				+ " does not classify parsed grid values; override getRiskGroup(double, double, double) to rate records in batches.");
+	}
+	
+	/**
+	 * Classifies a batch of records from their grid values, in the same way 
+	 * as {@link #getRiskGroup(double, double, double)}. Implementations may
+	 * override this with a batch lookup, for example with
+	 * {@link RiskVoxelTable#getRiskClasses(double[], double[], double[], int[])}.
+	 * 
+	 * @param riskGroups filled with the {@link RISK_GROUP#ordinal()} of each
+	 * 		  record.
+	 */
+	public default void getRiskGroups(double[] x, double[] y, double[] z, byte[] riskGroups){
+		if(x.length != riskGroups.length || y.length != riskGroups.length || z.length != riskGroups.length){
+			throw new IllegalArgumentException("Need the same number of values and risk groups.");
+		}
+		for(int i = 0; i < riskGroups.length; i++){
+			riskGroups[i] = (byte) getRiskGroup(x[i], y[i], z[i]).ordinal();
+		}
+	}
+	
+	/**
+	 * Classifies a batch of records of one individual, and adds them to the
+	 * individual's profile.
+	 */
+	public default void rateRecords(String id, double[] x, double[] y, double[] z, RiskProfiles profiles){
+		byte[] riskGroups = new byte[x.length];
+		getRiskGroups(x, y, z, riskGroups);
+		profiles.add(id, riskGroups, 0, riskGroups.length);
+	}
+	
 	enum RISK_GROUP{NONE, LOW, MEDIUM, HIGH}
 }
@@ -0,0 +1,309 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.scoring;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.misc.Counter;
+import org.matsim.up.acceleration.DigicoreRecordReader;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
+
+/**
+ * Rates individuals from raw accelerometer records that are far too many to
+ * keep in memory, for example for {@link DigiScorer#rateIndividuals(String, String)}.
+ * The records are first partitioned on a hash of their (numeric) id into a
+ * fixed number of binary spill files, so that all the records of an
+ * individual end up in the same file. The partitions are then scored in
+ * parallel, in batches, with
+ * {@link DigiScorer#getRiskGroups(double[], double[], double[], byte[])},
+ * and the profiles of the partitions are merged and written.
+ *
+ * <p>Memory is bounded by the spill buffers, one batch per thread, and the
+ * profiles themselves, i.e. it depends on the number of individuals, and not
+ * on the number of records. The scorer must allow concurrent calls.</p>
+ *
+ * @author jwjoubert
+ */
+public class RiskProfilePipeline {
+	final private static Logger LOG = Logger.getLogger(RiskProfilePipeline.class);
+	final public static String PROFILES_FILENAME = "riskProfiles.csv";
+	final private static int SPILL_BUFFER_SIZE = 1 << 16;
+	final private static int BATCH_SIZE = 8192;
+	/* The first integer that a double cannot tell apart from the next. */
+	final private static long MAX_ID = 1L << 53;
+
+	private final DigiScorer scorer;
+	private final DigicoreRecordReader reader;
+	private int numberOfPartitions = 64;
+	private int numberOfThreads = 1;
+
+
+	/**
+	 * @param scorer the (thread-safe) scorer, with its grid already ranked;
+	 * @param idColumn the (zero-based) column of the individual's id, which
+	 * 		  must be an integer below 2^53, e.g. the Digicore vehicle id;
+	 * @param gridColumns the columns of the grid's x, y, and z-values, in
+	 * 		  that order.
+	 */
+	public RiskProfilePipeline(DigiScorer scorer, int idColumn, int... gridColumns) {
+		if(gridColumns.length != 3){
+			throw new IllegalArgumentException("Need three grid columns, not " + gridColumns.length);
+		}
+		this.scorer = scorer;
+		this.reader = new DigicoreRecordReader(idColumn, gridColumns[0], gridColumns[1], gridColumns[2]);
+	}
+
+
+	public void setHasHeader(boolean hasHeader){
+		this.reader.setHasHeader(hasHeader);
+	}
+
+
+	/**
+	 * Sets the number of spill files. More partitions means fewer
+	 * individuals, and smaller profiles, per partition. The default is 64.
+	 */
+	public void setNumberOfPartitions(int numberOfPartitions){
+		if(numberOfPartitions < 1){
+			throw new IllegalArgumentException("Need at least one partition, not " + numberOfPartitions);
+		}
+		this.numberOfPartitions = numberOfPartitions;
+	}
+
+
+	/**
+	 * Sets the number of threads that score the partitions. The default is a
+	 * single thread.
+	 */
+	public void setNumberOfThreads(int numberOfThreads){
+		if(numberOfThreads < 1){
+			throw new IllegalArgumentException("Need at least one thread, not " + numberOfThreads);
+		}
+		this.numberOfThreads = numberOfThreads;
+	}
+
+
+	/**
+	 * Partitions and scores the records, and writes the profiles to
+	 * {@link #PROFILES_FILENAME} in the output folder. The spill files are
+	 * written to, and removed from, a new temporary folder in the output 
+	 * folder, so concurrent runs may share the output folder.
+	 *
+	 * @return the profiles of all the individuals.
+	 */
+	public RiskProfiles run(String filename, String outputFolder){
+		outputFolder = outputFolder + (outputFolder.endsWith("/") ? "" : "/");
+		/* A folder of its own, so that concurrent runs do not share spill files. */
+		File spillFolder;
+		try {
+			spillFolder = Files.createTempDirectory(Paths.get(outputFolder), "spill").toFile();
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot create spill folder in " + outputFolder);
+		}
+		String[] partitions = new String[numberOfPartitions];
+		for(int i = 0; i < numberOfPartitions; i++){
+			partitions[i] = new File(spillFolder, "partition_" + i + ".bin").getAbsolutePath();
+		}
+
+		try{
+			partition(filename, partitions);
+			RiskProfiles profiles = score(partitions);
+			profiles.write(outputFolder + PROFILES_FILENAME);
+			return profiles;
+		} finally{
+			for(String partition : partitions){
+				new File(partition).delete();
+			}
+			spillFolder.delete();
+		}
+	}
+
+
+	private void partition(String filename, String[] partitions){
+		LOG.info("Partitioning records from " + filename + " into " + partitions.length + " spill files...");
+		final DataOutputStream[] outputs = new DataOutputStream[partitions.length];
+		final Counter counter = new Counter("   records # ");
+		try{
+			for(int i = 0; i < partitions.length; i++){
+				outputs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partitions[i]), SPILL_BUFFER_SIZE));
+			}
+			reader.read(filename, new RecordHandler() {
+				@Override
+				public void handleRecord(double[] values) {
+					long id = getId(values[0]);
+					DataOutputStream output = outputs[getPartition(id, outputs.length)];
+					try {
+						output.writeLong(id);
+						output.writeDouble(values[1]);
+						output.writeDouble(values[2]);
+						output.writeDouble(values[3]);
+					} catch (IOException e) {
+						e.printStackTrace();
+						throw new RuntimeException("Cannot write to spill file.");
+					}
+					counter.incCounter();
+				}
+			});
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot create spill files.");
+		} finally{
+			for(DataOutputStream output : outputs){
+				if(output != null){
+					try {
+						output.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+						throw new RuntimeException("Cannot close spill file.");
+					}
+				}
+			}
+		}
+		counter.printCounter();
+	}
+
+
+	/**
+	 * Ids are parsed as doubles, which only hold integers exactly up to 
+	 * 2^53, so any other id would silently be merged with another.
+	 * 
+	 * @throws IllegalArgumentException if the id is not an integer, or too
+	 * 		   large to be told apart from its neighbours.
+	 */
+	static long getId(double value){
+		if(Double.isNaN(value) || Double.isInfinite(value) || value != Math.rint(value)){
+			throw new IllegalArgumentException("Cannot rate individual " + value + ": ids must be integers.");
+		}
+		if(Math.abs(value) >= MAX_ID){
+			throw new IllegalArgumentException("Cannot rate individual " + value + ": ids must be smaller than " + MAX_ID);
+		}
+		return (long) value;
+	}
+
+
+	/* Mixes the id bits, since fleet ids are often sequential. */
+	static int getPartition(long id, int partitions){
+		long h = id * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		return (int) ((h & 0x7fffffffL) % partitions);
+	}
+
+
+	private RiskProfiles score(String[] partitions){
+		LOG.info("Scoring " + partitions.length + " partitions using " + numberOfThreads + " threads...");
+		ForkJoinPool pool = new ForkJoinPool(numberOfThreads);
+		List<Future<RiskProfiles>> futures = new ArrayList<Future<RiskProfiles>>();
+		for(final String partition : partitions){
+			futures.add(pool.submit(new Callable<RiskProfiles>() {
+				@Override
+				public RiskProfiles call() throws Exception {
+					return scorePartition(partition);
+				}
+			}));
+		}
+
+		/* Merge in partition order, so the result does not depend on the threads. */
+		RiskProfiles profiles = new RiskProfiles();
+		try{
+			for(Future<RiskProfiles> future : futures){
+				profiles.merge(future.get());
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot score partitions.");
+		} finally{
+			pool.shutdown();
+		}
+		LOG.info("Done scoring " + profiles.getIds().size() + " individuals.");
+		return profiles;
+	}
+
+
+	private RiskProfiles scorePartition(String partition){
+		RiskProfiles profiles = new RiskProfiles();
+		long[] ids = new long[BATCH_SIZE];
+		double[] x = new double[BATCH_SIZE];
+		double[] y = new double[BATCH_SIZE];
+		double[] z = new double[BATCH_SIZE];
+		byte[] riskGroups = new byte[BATCH_SIZE];
+
+		try(DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(partition), SPILL_BUFFER_SIZE))){
+			boolean done = false;
+			while(!done){
+				int n = 0;
+				try{
+					while(n < BATCH_SIZE){
+						ids[n] = input.readLong();
+						x[n] = input.readDouble();
+						y[n] = input.readDouble();
+						z[n] = input.readDouble();
+						n++;
+					}
+				} catch(EOFException e){
+					done = true;
+				}
+				if(n == 0){
+					break;
+				}
+				if(n < BATCH_SIZE){
+					/* The last, partial, batch. */
+					x = Arrays.copyOf(x, n);
+					y = Arrays.copyOf(y, n);
+					z = Arrays.copyOf(z, n);
+					riskGroups = new byte[n];
+				}
+				scorer.getRiskGroups(x, y, z, riskGroups);
+
+				/* Records of an individual are mostly consecutive. */
+				int from = 0;
+				for(int i = 1; i <= n; i++){
+					if(i == n || ids[i] != ids[from]){
+						profiles.add(String.valueOf(ids[from]), riskGroups, from, i);
+						from = i;
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot read from " + partition);
+		}
+		return profiles;
+	}
+
+}
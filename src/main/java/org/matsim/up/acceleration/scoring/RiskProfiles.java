@@ -0,0 +1,143 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.scoring;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.up.acceleration.scoring.DigiScorer.RISK_GROUP;
+
+/**
+ * The number of records of each individual in every {@link RISK_GROUP}. Risk
+ * groups are added in batches, as filled by
+ * {@link DigiScorer#getRiskGroups(double[], double[], double[], byte[])}, so
+ * that records can be streamed through a scorer without keeping them, and
+ * the profiles of different parts of the data can be merged.
+ *
+ * @author jwjoubert
+ */
+public class RiskProfiles {
+	final private static Logger LOG = Logger.getLogger(RiskProfiles.class);
+	private final static RISK_GROUP[] GROUPS = RISK_GROUP.values();
+
+	private final Map<String, long[]> profiles = new HashMap<String, long[]>();
+
+
+	/**
+	 * Adds the risk group ordinals riskGroups[from] to riskGroups[to-1] to the
+	 * individual's profile.
+	 */
+	public void add(String id, byte[] riskGroups, int from, int to){
+		long[] profile = getOrCreateProfile(id);
+		for(int i = from; i < to; i++){
+			profile[riskGroups[i]]++;
+		}
+	}
+
+
+	public void add(String id, RISK_GROUP riskGroup){
+		getOrCreateProfile(id)[riskGroup.ordinal()]++;
+	}
+
+
+	/**
+	 * Adds all the profiles of another instance to this one.
+	 */
+	public void merge(RiskProfiles other){
+		for(Map.Entry<String, long[]> entry : other.profiles.entrySet()){
+			long[] profile = getOrCreateProfile(entry.getKey());
+			for(int i = 0; i < profile.length; i++){
+				profile[i] += entry.getValue()[i];
+			}
+		}
+	}
+
+
+	private long[] getOrCreateProfile(String id){
+		long[] profile = profiles.get(id);
+		if(profile == null){
+			profile = new long[GROUPS.length];
+			profiles.put(id, profile);
+		}
+		return profile;
+	}
+
+
+	/**
+	 * @return the number of the individual's records in the risk group.
+	 */
+	public long getCount(String id, RISK_GROUP riskGroup){
+		long[] profile = profiles.get(id);
+		return profile == null ? 0 : profile[riskGroup.ordinal()];
+	}
+
+
+	/**
+	 * @return the individuals, sorted.
+	 */
+	public List<String> getIds(){
+		List<String> ids = new ArrayList<String>(profiles.keySet());
+		Collections.sort(ids);
+		return ids;
+	}
+
+
+	/**
+	 * Writes the profiles, one individual per line, sorted by id.
+	 */
+	public void write(String filename){
+		LOG.info("Writing the risk profiles of " + profiles.size() + " individuals to " + filename);
+		BufferedWriter bw = IOUtils.getBufferedWriter(filename);
+		try{
+			bw.write("id");
+			for(RISK_GROUP group : GROUPS){
+				bw.write("," + group.name().toLowerCase());
+			}
+			bw.newLine();
+
+			for(String id : getIds()){
+				bw.write(id);
+				for(long count : profiles.get(id)){
+					bw.write("," + count);
+				}
+				bw.newLine();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			throw new RuntimeException("Cannot write to " + filename);
+		} finally{
+			try {
+				bw.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException("Cannot close " + filename);
+			}
+		}
+		LOG.info("Done writing risk profiles.");
+	}
+
+}
@@ -219,8 +219,18 @@ public class KernelDensityEstimator {
 	}
 
 	private double getFunctionFromDistance(double distance) {
+		return getFunctionFromDistance(this.kdeType, this.radius, distance);
+	}
+
+	/**
+	 * The (unnormalised) kernel function, also used by the three-dimensional
+	 * grids, which do not have a {@link GeneralGrid}.
+	 *
+	 * @return the kernel weight at the given distance from a point.
+	 */
+	public static double getFunctionFromDistance(KdeType kdeType, double radius, double distance) {
 		double w = 0.0;
-		switch (this.kdeType) {
+		switch (kdeType) {
 			case CELL:
 				w = 1.0;
 				break;
@@ -0,0 +1,102 @@
+package org.matsim.up.acceleration;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.up.acceleration.DigicoreRecordCache.Column;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
+
+public class DigicoreRecordCacheTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testCache(){
+		String filename = utils.getOutputDirectory() + "records.csv";
+		writeRecords(filename, 100);
+
+		DigicoreRecordCache cache = DigicoreRecordCache.getCache(filename, true);
+		Assertions.assertEquals(filename + ".5_6_7_8_2" + DigicoreRecordCache.EXTENSION, cache.getFilename(), "Wrong cache filename.");
+		Assertions.assertEquals(100, cache.size(), "Wrong number of records.");
+		Assertions.assertEquals(Column.SPEED, cache.getColumn(8), "Wrong column.");
+		Assertions.assertNull(cache.getColumn(3), "Column should not be cached.");
+
+		List<double[]> records = readAll(cache, 0, cache.size(), Column.EVENT, Column.Z, Column.X);
+		for(int i = 0; i < 100; i++){
+			Assertions.assertArrayEquals(new double[]{i % 20, 1000.0 + i, 0.5*i - 20}, records.get(i), 0.0, "Wrong values for record " + i);
+		}
+		List<double[]> range = readAll(cache, 40, 60, Column.SPEED);
+		Assertions.assertEquals(20, range.size(), "Wrong number of records in range.");
+		Assertions.assertEquals(100.0, range.get(0)[0], 0.0, "Wrong first speed in range.");
+
+		/* An up-to-date cache is not rebuilt... */
+		File file = new File(cache.getFilename());
+		file.setLastModified(1000L);
+		DigicoreRecordCache.getCache(filename, true);
+		Assertions.assertEquals(1000L, file.lastModified(), "Cache should not have been rebuilt.");
+
+		/* ...different columns are cached separately, without touching it... */
+		long length = file.length();
+		DigicoreRecordCache withoutEvents = DigicoreRecordCache.getCache(filename, true, 5, 6, 7, 8, -1);
+		Assertions.assertEquals(filename + ".5_6_7_8_n" + DigicoreRecordCache.EXTENSION, withoutEvents.getFilename(), "Wrong cache filename.");
+		Assertions.assertEquals(100, withoutEvents.size(), "Wrong number of records.");
+		Assertions.assertEquals(length - 4*100, new File(withoutEvents.getFilename()).length(), "Cache should not have events.");
+		Assertions.assertNull(withoutEvents.getColumn(2), "Events should not be cached.");
+		Assertions.assertEquals(1000L, file.lastModified(), "Other cache should not have been rebuilt.");
+		File[] leftovers = new File(utils.getOutputDirectory()).listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".tmp");
+			}
+		});
+		Assertions.assertEquals(0, leftovers.length, "Temporary files left behind.");
+
+		/* ...but a changed source invalidates it. */
+		writeRecords(filename, 50);
+		Assertions.assertEquals(50, DigicoreRecordCache.getCache(filename, true).size(), "Cache should have been rebuilt.");
+	}
+
+	private static List<double[]> readAll(DigicoreRecordCache cache, long from, long to, Column... columns){
+		final List<double[]> records = new ArrayList<>();
+		long read = cache.read(from, to, new RecordHandler() {
+			@Override
+			public void handleRecord(double[] values) {
+				records.add(values.clone());
+			}
+		}, columns);
+		Assertions.assertEquals(records.size(), read, "Wrong number of records reported.");
+		return records;
+	}
+
+	private static void writeRecords(String filename, int records){
+		BufferedWriter bw = IOUtils.getBufferedWriter(filename);
+		try{
+			bw.write("id,a,event,c,d,x,y,z,speed");
+			bw.newLine();
+			for(int i = 0; i < records; i++){
+				bw.write(String.format("%d,1,%d,3,4,%.3f,%.3f,%.3f,%d", i, i % 20, 0.5*i - 20, -0.25*i, 1000.0 + i, 60 + i));
+				bw.newLine();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot write records.");
+		} finally{
+			try {
+				bw.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				Assertions.fail("Cannot close records.");
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package org.matsim.up.acceleration;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.up.acceleration.DigicoreRecordReader.RecordHandler;
+
+public class DigicoreRecordReaderTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testParseDouble(){
+		String[] numbers = {"0", "-0.0", "12", "-12.5", "+3.25", " 7.125 ", "0.0012",
+				"1e3", "-2.5E-4", "123456789.123456789", "9007199254740993",
+				"1.7976931348623157E308", "4.9e-324", ".5", "5.", "NaN", "Infinity"};
+		for(String number : numbers){
+			Assertions.assertEquals(Double.parseDouble(number),
+					DigicoreRecordReader.parseDouble(number, 0, number.length()), 0.0, "Wrong value for " + number);
+		}
+
+		Random random = new Random(1234L);
+		for(int i = 0; i < 10000; i++){
+			String number = String.format("%." + random.nextInt(8) + "f", 2000*random.nextGaussian());
+			Assertions.assertEquals(Double.parseDouble(number),
+					DigicoreRecordReader.parseDouble(number, 0, number.length()), 0.0, "Wrong value for " + number);
+		}
+
+		try{
+			DigicoreRecordReader.parseDouble("abc", 0, 3);
+			Assertions.fail("Should not parse a non-number.");
+		} catch(NumberFormatException e){
+			/* Correct. */
+		}
+	}
+
+	@Test
+	public void testParse(){
+		DigicoreRecordReader reader = new DigicoreRecordReader(7, 5, 6);
+		double[] values = new double[3];
+		reader.parse("1,2,3,4,5,-12.5,0.75,1001,60", values);
+		Assertions.assertArrayEquals(new double[]{1001.0, -12.5, 0.75}, values, 0.0, "Wrong values.");
+
+		try{
+			reader.parse("1,2,3,4,5,-12.5,0.75", values);
+			Assertions.fail("Should not parse a record with too few columns.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+	}
+
+	@Test
+	public void testRead(){
+		String filename = utils.getOutputDirectory() + "records.csv";
+		writeRecords(filename, true, "\r\n", false);
+		DigicoreRecordReader reader = new DigicoreRecordReader(5, 6, 8);
+		reader.setHasHeader(true);
+		List<double[]> records = readAll(reader, filename, 0, Long.MAX_VALUE);
+		Assertions.assertEquals(100, records.size(), "Wrong number of records.");
+		for(int i = 0; i < records.size(); i++){
+			Assertions.assertArrayEquals(getRecord(i), records.get(i), 0.0, "Wrong values for record " + i);
+		}
+
+		/* Byte ranges, split on a line boundary. */
+		writeRecords(filename, false, "\n", true);
+		reader.setHasHeader(false);
+		long split = 0;
+		for(int i = 0; i < 40; i++){
+			split += getLine(i).length() + 1;
+		}
+		List<double[]> first = readAll(reader, filename, 0, split);
+		List<double[]> second = readAll(reader, filename, split, Long.MAX_VALUE);
+		Assertions.assertEquals(40, first.size(), "Wrong number of records in first range.");
+		Assertions.assertEquals(60, second.size(), "Wrong number of records in second range.");
+		Assertions.assertArrayEquals(getRecord(40), second.get(0), 0.0, "Wrong first record in second range.");
+
+		/* Compressed files are streamed. */
+		String gzFilename = utils.getOutputDirectory() + "records.csv.gz";
+		writeRecords(gzFilename, true, "\n", true);
+		reader.setHasHeader(true);
+		records = new ArrayList<>();
+		final List<double[]> gzRecords = records;
+		long read = reader.read(gzFilename, new RecordHandler() {
+			@Override
+			public void handleRecord(double[] values) {
+				gzRecords.add(values.clone());
+			}
+		});
+		Assertions.assertEquals(100, read, "Wrong number of compressed records.");
+		Assertions.assertArrayEquals(getRecord(99), gzRecords.get(99), 0.0, "Wrong last compressed record.");
+	}
+
+	private static List<double[]> readAll(DigicoreRecordReader reader, String filename, long start, long end){
+		final List<double[]> records = new ArrayList<>();
+		long read = reader.read(filename, start, end, new RecordHandler() {
+			@Override
+			public void handleRecord(double[] values) {
+				records.add(values.clone());
+			}
+		});
+		Assertions.assertEquals(records.size(), read, "Wrong number of records reported.");
+		return records;
+	}
+
+	private static String getLine(int i){
+		return String.format("%d,1,2,3,4,%.3f,%.3f,%.3f,%d", i, 0.5*i - 20, -0.25*i, 1000.0 + i, 60 + i);
+	}
+
+	private static double[] getRecord(int i){
+		String[] sa = getLine(i).split(",");
+		return new double[]{Double.parseDouble(sa[5]), Double.parseDouble(sa[6]), Double.parseDouble(sa[8])};
+	}
+
+	private static void writeRecords(String filename, boolean header, String lineBreak, boolean lastLineBreak){
+		BufferedWriter bw = IOUtils.getBufferedWriter(filename);
+		try{
+			if(header){
+				bw.write("id,a,b,c,d,x,y,z,speed" + lineBreak);
+			}
+			for(int i = 0; i < 100; i++){
+				bw.write(getLine(i));
+				if(i < 99 || lastLineBreak){
+					bw.write(lineBreak);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot write records.");
+		} finally{
+			try {
+				bw.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				Assertions.fail("Cannot close records.");
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package org.matsim.up.acceleration;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.matsim.core.utils.io.IOUtils;
+
+/**
+ * Writes dummy Digicore records, with header <code>id,a,b,c,d,x,y,z,speed</code>,
+ * for the tests. The x and y-values are normally distributed around the
+ * origin, and the z-values around 1000.
+ *
+ * @author jwjoubert
+ */
+public class DummyRecords {
+
+	/**
+	 * Writes records that each have their own id, i.e. the record number.
+	 *
+	 * @see #write(String, int, long, int)
+	 */
+	public static double[][] write(String filename, int records, long seed){
+		return write(filename, records, seed, 0);
+	}
+
+
+	/**
+	 * Writes records of the given number of vehicles, interleaved, with ids
+	 * from 1000 onwards. The values are those of 
+	 * {@link #generate(int, long, int)}, rounded to two decimals.
+	 *
+	 * @param vehicles the number of vehicles, or 0 if every record should
+	 * 		  have its own id.
+	 * @return the id, x, y and z-value of each record, as written to file.
+	 */
+	public static double[][] write(String filename, int records, long seed, int vehicles){
+		double[][] written = generate(records, seed, vehicles);
+		BufferedWriter bw = IOUtils.getBufferedWriter(filename);
+		try{
+			bw.write("id,a,b,c,d,x,y,z,speed");
+			bw.newLine();
+			for(double[] record : written){
+				String x = String.format("%.2f", record[1]);
+				String y = String.format("%.2f", record[2]);
+				String z = String.format("%.2f", record[3]);
+				bw.write(String.format("%d,1,2,3,4,%s,%s,%s,60", (long) record[0], x, y, z));
+				bw.newLine();
+				record[1] = Double.parseDouble(x);
+				record[2] = Double.parseDouble(y);
+				record[3] = Double.parseDouble(z);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot write dummy records.");
+		} finally{
+			try {
+				bw.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				Assertions.fail("Cannot close dummy records.");
+			}
+		}
+		return written;
+	}
+
+
+	/**
+	 * Generates records that each have their own id, without writing them.
+	 *
+	 * @see #generate(int, long, int)
+	 */
+	public static double[][] generate(int records, long seed){
+		return generate(records, seed, 0);
+	}
+
+
+	/**
+	 * Generates records, for tests that add them to a grid directly.
+	 *
+	 * @return the id, x, y and z-value of each record.
+	 */
+	public static double[][] generate(int records, long seed, int vehicles){
+		double[][] generated = new double[records][];
+		Random random = new Random(seed);
+		for(int i = 0; i < records; i++){
+			long id = vehicles > 0 ? 1000 + random.nextInt(vehicles) : i;
+			generated[i] = new double[]{id, 200*random.nextGaussian(), 200*random.nextGaussian(), 1000 + 100*random.nextGaussian()};
+		}
+		return generated;
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class CountMassSketchTest {
+
+	@Test
+	public void testAddRemoveAndMerge(){
+		CountMassSketch sketch = new CountMassSketch(0.01);
+		sketch.add(1.0);
+		sketch.add(100.0);
+		sketch.add(101.0);
+		Assertions.assertEquals(3, sketch.getNumberOfCells(), "Wrong number of cells.");
+		Assertions.assertEquals(202.0, sketch.getTotalMass(), MatsimTestUtils.EPSILON, "Wrong mass.");
+		Assertions.assertEquals(201.0, sketch.getMassAtLeast(100.5), MatsimTestUtils.EPSILON, "Wrong mass at least 100.5.");
+		Assertions.assertEquals(sketch.getBucket(100.0), sketch.getBucket(101.0), "Counts within 1% should share a bucket.");
+
+		sketch.update(1.0, 1000.0);
+		Assertions.assertEquals(3, sketch.getNumberOfCells(), "Wrong number of cells after update.");
+		Assertions.assertEquals(1000.0, sketch.getMassAtLeast(500.0), MatsimTestUtils.EPSILON, "Wrong mass after update.");
+		try{
+			sketch.remove(5.0);
+			Assertions.fail("Should not remove a cell that is not in the sketch.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+
+		/* Merging is the same as adding the cells to one sketch, in any order. */
+		CountMassSketch other = new CountMassSketch(0.01);
+		other.add(0.001);
+		other.add(1e6);
+		CountMassSketch merged = new CountMassSketch(0.01);
+		merged.merge(other);
+		merged.merge(sketch);
+		sketch.merge(other);
+		Assertions.assertEquals(5, merged.getNumberOfCells(), "Wrong number of merged cells.");
+		Assertions.assertEquals(sketch.getTotalMass(), merged.getTotalMass(), MatsimTestUtils.EPSILON, "Wrong merged mass.");
+		for(double count : new double[]{0.001, 1.0, 100.0, 1000.0, 1e6}){
+			Assertions.assertEquals(sketch.getMassAtLeast(count), merged.getMassAtLeast(count), MatsimTestUtils.EPSILON, "Wrong merged mass at least " + count);
+		}
+	}
+
+	@Test
+	public void testRiskClassesOfFractionalMass(){
+		/* The total is summed in the order of the cells, the buckets from the top down. */
+		GridRanker ranker = new GridRanker(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		Random random = new Random(4321L);
+		for(int trial = 0; trial < 20; trial++){
+			CountMassSketch sketch = new CountMassSketch(0.01);
+			double total = 0.0;
+			for(int i = 0; i < 1000; i++){
+				double count = 0.1 + 50*random.nextDouble();
+				sketch.add(count);
+				total += count;
+			}
+			int[] classes = sketch.getRiskClasses(ranker, total);
+			for(int i = 0; i < classes.length; i++){
+				Assertions.assertTrue(classes[i] != FCCCellStore.UNRATED, "Bucket " + i + " not rated in trial " + trial);
+			}
+			Assertions.assertEquals(3, classes[0], "Sparsest bucket should be in the last class in trial " + trial);
+		}
+	}
+
+	@Test
+	public void testRankGridCellsIncrementally(){
+		List<Double> thresholds = Arrays.asList(0.5, 0.75, 0.9, 1.0);
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(20.0);
+		grid.setRiskThresholds(thresholds);
+		grid.setupGrid("dummy.csv");
+		grid.setRankingSketch(0.02);
+
+		/* Two daily batches. */
+		Random random = new Random(1234L);
+		for(int day = 0; day < 2; day++){
+			for(int i = 0; i < 5000; i++){
+				grid.incrementCount(200*random.nextGaussian(), 200*random.nextGaussian(), 1000 + 100*random.nextGaussian(), 1.0);
+			}
+			double bound = grid.rankGridCellsIncrementally();
+			int[] incremental = new int[grid.cells.size()];
+			for(int cell = 0; cell < incremental.length; cell++){
+				incremental[cell] = grid.getCellRisk(cell);
+			}
+			grid.rankGridCells();
+
+			/* Cells may only differ by one class, and only up to the bound. */
+			double wrong = 0.0;
+			for(int cell = 0; cell < incremental.length; cell++){
+				int exact = grid.getCellRisk(cell);
+				Assertions.assertTrue(Math.abs(exact - incremental[cell]) <= 1, "Class differs too much for cell " + cell);
+				if(exact != incremental[cell]){
+					wrong += grid.getCount(cell);
+				}
+			}
+			Assertions.assertTrue(wrong / grid.pointsConsidered <= bound + MatsimTestUtils.EPSILON, "Error bound exceeded on day " + day);
+			Assertions.assertEquals(grid.pointsConsidered, grid.getRankingSketch().getTotalMass(), MatsimTestUtils.EPSILON, "Sketch out of date on day " + day);
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.up.acceleration.DigicoreRecordCache;
+import org.matsim.up.acceleration.DummyRecords;
+
+public class DigiGrid_XYZTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testPopulateRankAndWrite(){
+		String filename = utils.getOutputDirectory() + "records.csv";
+		writeDummyRecords(filename);
+
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(10.0);
+		grid.setRiskThresholds(getThresholds());
+		grid.setupGrid(filename);
+		Assertions.assertEquals(-1, grid.getClosestCell(0.0, 0.0, 1000.0), "Cell should not exist before it is populated.");
+		for(double[] record : getDummyRecords()){
+			grid.incrementCount(record[0], record[1], record[2], 1.0);
+		}
+		Assertions.assertEquals(3, grid.getNumberOfOccupiedCells(), "Wrong number of occupied cells.");
+
+		int busiest = grid.getClosestCell(0.0, 0.0, 1000.0);
+		Assertions.assertEquals(3.0, grid.getCount(busiest), MatsimTestUtils.EPSILON, "Wrong count.");
+		Assertions.assertEquals(3.0, grid.getCount(grid.getClosest(1.0, -1.0, 1001.0)), MatsimTestUtils.EPSILON, "Wrong count.");
+		Assertions.assertEquals(-1, grid.getClosestCell(50.0, -25.0, 1000.0), "Cell should not exist.");
+		Assertions.assertEquals(busiest, grid.getClosestOccupiedCell(10.0, 5.0, 1030.0), "Wrong closest occupied cell.");
+
+		grid.rankGridCells();
+		Assertions.assertTrue(grid.isRanked(), "Grid should be ranked.");
+		Assertions.assertEquals(0, grid.getCellRisk(busiest), "Wrong risk class for busiest cell.");
+		Assertions.assertEquals(3, grid.getCellRisk(grid.getClosestCell(200.0, 200.0, 800.0)), "Wrong risk class for quietest cell.");
+
+		grid.writeCellCountsAndRiskClasses(utils.getOutputDirectory());
+
+		DigiGrid_XYZ copy = new DigiGrid_XYZ(10.0);
+		copy.populateFromGridFile(utils.getOutputDirectory() + "cellValuesAndRiskClasses.csv");
+		Assertions.assertEquals(3, copy.getNumberOfOccupiedCells(), "Wrong number of occupied cells after reading.");
+		for(double[] record : getDummyRecords()){
+			int cell = copy.getClosestCell(record[0], record[1], record[2]);
+			int original = grid.getClosestCell(record[0], record[1], record[2]);
+			Assertions.assertEquals(grid.getCount(original), copy.getCount(cell), MatsimTestUtils.EPSILON, "Wrong count after reading.");
+			Assertions.assertEquals(grid.getCellRisk(original), copy.getCellRisk(cell), "Wrong risk class after reading.");
+		}
+
+		DigiGrid_XYZ snapshot = new DigiGrid_XYZ(10.0);
+		snapshot.populateFromGridFolder(utils.getOutputDirectory());
+		Assertions.assertTrue(snapshot.isRanked(), "Snapshot should be ranked.");
+		Assertions.assertEquals(getThresholds(), snapshot.riskThresholds, "Wrong thresholds from snapshot.");
+		Assertions.assertEquals(grid.pointsConsidered, snapshot.pointsConsidered, MatsimTestUtils.EPSILON, "Wrong number of points from snapshot.");
+		Assertions.assertEquals(3, snapshot.getNumberOfOccupiedCells(), "Wrong number of occupied cells from snapshot.");
+		for(double[] record : getDummyRecords()){
+			int cell = snapshot.getClosestCell(record[0], record[1], record[2]);
+			int original = grid.getClosestCell(record[0], record[1], record[2]);
+			Assertions.assertEquals(grid.getCount(original), snapshot.getCount(cell), MatsimTestUtils.EPSILON, "Wrong count from snapshot.");
+			Assertions.assertEquals(grid.getCellRisk(original), snapshot.getCellRisk(cell), "Wrong risk class from snapshot.");
+		}
+		try{
+			new DigiGrid_XYZ(20.0).populateFromGridFolder(utils.getOutputDirectory());
+			Assertions.fail("Should not read a snapshot of another scale.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+	}
+
+	@Test
+	public void testPopulateGridInParallel(){
+		String filename = utils.getOutputDirectory() + "records.csv";
+		DummyRecords.write(filename, 5000, 1234L);
+
+		DigiGrid_XYZ sequential = new DigiGrid_XYZ(25.0);
+		sequential.setInputHasHeader(true);
+		sequential.setRiskThresholds(getThresholds());
+		sequential.setupGrid(filename);
+		sequential.populateGrid(filename);
+
+		DigiGrid_XYZ parallel = new DigiGrid_XYZ(25.0);
+		parallel.setInputHasHeader(true);
+		parallel.setRiskThresholds(getThresholds());
+		parallel.setupGrid(filename);
+		parallel.setNumberOfThreads(7);
+		parallel.populateGrid(filename);
+
+		Assertions.assertEquals(sequential.getNumberOfOccupiedCells(), parallel.getNumberOfOccupiedCells(), "Wrong number of occupied cells.");
+		double total = 0.0;
+		for(int cell = 0; cell < sequential.cells.size(); cell++){
+			int other = parallel.cells.getCell(sequential.cells.getKey(cell));
+			Assertions.assertTrue(other >= 0, "Cell " + cell + " missing from parallel grid.");
+			Assertions.assertEquals(sequential.getCount(cell), parallel.getCount(other), MatsimTestUtils.EPSILON, "Wrong count for cell " + cell);
+			total += parallel.getCount(other);
+		}
+		Assertions.assertEquals(5000.0, total, MatsimTestUtils.EPSILON, "Not all records were binned.");
+
+		/* The same again, but from the record cache, with and without threads. */
+		for(int threads : new int[]{1, 3}){
+			DigiGrid_XYZ cached = new DigiGrid_XYZ(25.0);
+			cached.setInputHasHeader(true);
+			cached.setRiskThresholds(getThresholds());
+			cached.setupGrid(filename);
+			cached.setUseRecordCache(true);
+			cached.setNumberOfThreads(threads);
+			cached.populateGrid(filename);
+			Assertions.assertEquals(sequential.cells.size(), cached.cells.size(), "Wrong number of cells from cache.");
+			for(int cell = 0; cell < sequential.cells.size(); cell++){
+				int other = cached.cells.getCell(sequential.cells.getKey(cell));
+				Assertions.assertEquals(sequential.getCount(cell), cached.getCount(other), MatsimTestUtils.EPSILON, "Wrong cached count for cell " + cell);
+			}
+		}
+		/* Only the grid's own columns are cached. */
+		Assertions.assertTrue(new File(DigicoreRecordCache.getCacheFilename(filename, 5, 6, 7, -1, -1)).exists(), "Grid columns not cached.");
+		Assertions.assertFalse(new File(DigicoreRecordCache.getCacheFilename(filename, 5, 6, 7, 8, 2)).exists(), "Unused columns cached.");
+	}
+
+	@Test
+	public void testGetClosestCellsInBatch(){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(25.0);
+		grid.setRiskThresholds(getThresholds());
+		grid.setupGrid("dummy.csv");
+		for(double[] record : DummyRecords.generate(2000, 4321L)){
+			grid.incrementCount(record[1], record[2], record[3], 1.0);
+		}
+
+		/* Twice as spread as the grid's records, so many fall in empty cells. */
+		int n = 50000;
+		double[][] records = DummyRecords.generate(n, 8765L);
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] z = new double[n];
+		for(int i = 0; i < n; i++){
+			x[i] = 2*records[i][1];
+			y[i] = 2*records[i][2];
+			z[i] = 1000 + 2*(records[i][3] - 1000);
+		}
+		for(int threads : new int[]{1, 4}){
+			grid.setNumberOfThreads(threads);
+			int[] cells = new int[n];
+			int[] occupied = new int[n];
+			grid.getClosestCells(x, y, z, cells);
+			grid.getClosestOccupiedCells(x, y, z, occupied);
+			for(int i = 0; i < n; i++){
+				Assertions.assertEquals(grid.getClosestCell(x[i], y[i], z[i]), cells[i], "Wrong cell for record " + i);
+				Assertions.assertEquals(grid.getClosestOccupiedCell(x[i], y[i], z[i]), occupied[i], "Wrong occupied cell for record " + i);
+			}
+		}
+	}
+
+	@Test
+	public void testMergePartialGrids(){
+		double[][] records = DummyRecords.generate(4000, 2468L);
+		DigiGrid_XYZ full = getPartialGrid(records, 0, 1);
+		full.rankGridCells();
+
+		/* Merge the four partial grids in two different groupings and orders. */
+		DigiGrid_XYZ left = getPartialGrid(records, 0, 4);
+		left.merge(getPartialGrid(records, 1, 4));
+		DigiGrid_XYZ right = getPartialGrid(records, 2, 4);
+		right.merge(getPartialGrid(records, 3, 4));
+		left.merge(right);
+
+		String folder = utils.getOutputDirectory();
+		getPartialGrid(records, 0, 4).writeSnapshot(folder);
+		DigiGrid_XYZ reversed = new DigiGrid_XYZ(25.0);
+		reversed.setRiskThresholds(getThresholds());
+		for(int part = 3; part > 0; part--){
+			reversed.merge(getPartialGrid(records, part, 4));
+		}
+		reversed.mergeFromGridFolder(folder);
+
+		/* All the partial grids at once, so the cells are only renumbered once. */
+		String[] folders = new String[4];
+		for(int part = 0; part < 4; part++){
+			folders[part] = folder + "part_" + (3 - part) + "/";
+			new File(folders[part]).mkdirs();
+			getPartialGrid(records, 3 - part, 4).writeSnapshot(folders[part]);
+		}
+		DigiGrid_XYZ once = new DigiGrid_XYZ(25.0);
+		once.setRiskThresholds(getThresholds());
+		once.mergeFromGridFolder(folders);
+
+		for(DigiGrid_XYZ merged : new DigiGrid_XYZ[]{left, reversed, once}){
+			Assertions.assertFalse(merged.isRanked(), "Merged grid should not be ranked.");
+			merged.rankGridCells();
+			Assertions.assertEquals(full.cells.size(), merged.cells.size(), "Wrong number of cells.");
+			Assertions.assertEquals(full.pointsConsidered, merged.pointsConsidered, MatsimTestUtils.EPSILON, "Wrong number of points.");
+			for(int cell = 0; cell < full.cells.size(); cell++){
+				int other = merged.cells.getCell(full.cells.getKey(cell));
+				Assertions.assertEquals(full.getCount(cell), merged.getCount(other), MatsimTestUtils.EPSILON, "Wrong count for cell " + cell);
+				Assertions.assertEquals(full.getCellRisk(cell), merged.getCellRisk(other), "Wrong risk class for cell " + cell);
+			}
+		}
+		for(int cell = 0; cell < left.cells.size(); cell++){
+			Assertions.assertEquals(left.cells.getKey(cell), reversed.cells.getKey(cell), "Cells should be numbered the same.");
+			Assertions.assertEquals(left.cells.getKey(cell), once.cells.getKey(cell), "Cells should be numbered the same.");
+		}
+
+		try{
+			left.merge(new DigiGrid_XYZ(10.0));
+			Assertions.fail("Should not merge grids of different scales.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+	}
+
+	/* A grid with every n'th record, starting at the given one. */
+	private static DigiGrid_XYZ getPartialGrid(double[][] records, int first, int n){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(25.0);
+		grid.setRiskThresholds(getThresholds());
+		grid.setupGrid("dummy.csv");
+		for(int i = first; i < records.length; i += n){
+			grid.incrementCount(records[i][1], records[i][2], records[i][3], 1.0);
+		}
+		return grid;
+	}
+
+	private static List<Double> getThresholds(){
+		return Arrays.asList(0.5, 0.75, 0.9, 1.0);
+	}
+
+	private static double[][] getDummyRecords(){
+		return new double[][]{
+			{0.0, 0.0, 1000.0},
+			{1.0, -1.0, 1001.0},
+			{-2.0, 1.5, 998.0},
+			{100.0, -50.0, 950.0},
+			{100.5, -49.0, 951.0},
+			{200.0, 200.0, 800.0}};
+	}
+
+	private static void writeDummyRecords(String filename){
+		BufferedWriter bw = IOUtils.getBufferedWriter(filename);
+		try{
+			int id = 0;
+			for(double[] record : getDummyRecords()){
+				bw.write(String.format("%d,1,2,3,4,%.1f,%.1f,%.1f,60", id++, record[0], record[1], record[2]));
+				bw.newLine();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot write dummy records.");
+		} finally{
+			try {
+				bw.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				Assertions.fail("Cannot close dummy records.");
+			}
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.up.acceleration.DummyRecords;
+import org.matsim.up.utils.grid.KernelDensityEstimator.KdeType;
+
+public class FCCKernelStencilTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testStencil(){
+		FCCKernelStencil cell = new FCCKernelStencil(10.0, KdeType.CELL, 0.0);
+		Assertions.assertEquals(1, cell.size(), "Cell kernel should only use the cell itself.");
+		Assertions.assertEquals(1.0, cell.getWeight(0), MatsimTestUtils.EPSILON, "Wrong weight.");
+
+		try{
+			new FCCKernelStencil(10.0, KdeType.TRIANGULAR, 14.0);
+			Assertions.fail("Radius should reach the neighbouring cells.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+
+		/* Within 20 units: the cell itself and its 12 closest neighbours. */
+		FCCKernelStencil triangular = new FCCKernelStencil(10.0, KdeType.TRIANGULAR, 20.0);
+		Assertions.assertEquals(13, triangular.size(), "Wrong number of cells.");
+		double sum = 0.0;
+		double centre = 0.0;
+		for(int i = 0; i < triangular.size(); i++){
+			sum += triangular.getWeight(i);
+			long key = triangular.getNeighbourKey(FCCLattice.packKey(0, 0, 0), i);
+			if(key == FCCLattice.packKey(0, 0, 0)){
+				centre = triangular.getWeight(i);
+			}
+		}
+		Assertions.assertEquals(1.0, sum, MatsimTestUtils.EPSILON, "Weights should sum to one.");
+		/* Weights are proportional to 20 at the centre and 20-sqrt(200) at the neighbours. */
+		double neighbour = 20.0 - Math.sqrt(200.0);
+		Assertions.assertEquals(20.0 / (20.0 + 12*neighbour), centre, MatsimTestUtils.EPSILON, "Wrong weight for the centre.");
+	}
+
+	@Test
+	public void testSmoothGrid(){
+		String filename = utils.getOutputDirectory() + "records.csv";
+		DummyRecords.write(filename, 2000, 1234L);
+
+		DigiGrid_XYZ counted = getGrid(filename, null, 1);
+		DigiGrid_XYZ sequential = getGrid(filename, KdeType.EPANECHNIKOV, 1);
+		DigiGrid_XYZ parallel = getGrid(filename, KdeType.EPANECHNIKOV, 4);
+		Assertions.assertEquals(KdeType.EPANECHNIKOV, sequential.getKdeType(), "Wrong kernel.");
+		Assertions.assertEquals(2000.0, sequential.pointsConsidered, 1e-6, "All the mass should be spread.");
+		Assertions.assertTrue(sequential.getNumberOfOccupiedCells() > counted.getNumberOfOccupiedCells(), "Smoothing should occupy more cells.");
+
+		Assertions.assertEquals(sequential.cells.size(), parallel.cells.size(), "Wrong number of cells in parallel.");
+		for(int cell = 0; cell < sequential.cells.size(); cell++){
+			int other = parallel.cells.getCell(sequential.cells.getKey(cell));
+			Assertions.assertEquals(sequential.getCount(cell), parallel.getCount(other), 1e-9, "Wrong smoothed count for cell " + cell);
+		}
+	}
+
+	@Test
+	public void testRankSmoothedGrid(){
+		String filename = utils.getOutputDirectory() + "records.csv";
+		DummyRecords.write(filename, 2000, 1234L);
+
+		/* Fractional counts must still all add up to the last class. */
+		DigiGrid_XYZ grid = getGrid(filename, KdeType.EPANECHNIKOV, 1);
+		grid.rankGridCells();
+		int highest = 0;
+		for(int cell = grid.cells.nextOccupiedCell(0); cell >= 0; cell = grid.cells.nextOccupiedCell(cell+1)){
+			int riskClass = grid.getCellRisk(cell);
+			Assertions.assertTrue(riskClass != FCCCellStore.UNRATED, "Occupied cell " + cell + " not rated.");
+			highest = Math.max(highest, riskClass);
+		}
+		Assertions.assertEquals(3, highest, "The sparsest cells should be in the last class.");
+	}
+
+	private static DigiGrid_XYZ getGrid(String filename, KdeType kdeType, int threads){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(20.0);
+		grid.setInputHasHeader(true);
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid(filename);
+		grid.setKernelDensity(kdeType, 60.0);
+		grid.setNumberOfThreads(threads);
+		grid.populateGrid(filename);
+		return grid;
+	}
+}
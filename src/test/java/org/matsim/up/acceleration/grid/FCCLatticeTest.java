@@ -0,0 +1,92 @@
+/* *********************************************************************** *
+ * project: org.matsim.*
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ * copyright       : (C) 2024 by the members listed in the COPYING,        *
+ *                   LICENSE and WARRANTY file.                            *
+ * email           : info at matsim dot org                                *
+ *                                                                         *
+ * *********************************************************************** *
+ *                                                                         *
+ *   This program is free software; you can redistribute it and/or modify  *
+ *   it under the terms of the GNU General Public License as published by  *
+ *   the Free Software Foundation; either version 2 of the License, or     *
+ *   (at your option) any later version.                                   *
+ *   See also COPYING, LICENSE and WARRANTY file                           *
+ *                                                                         *
+ * *********************************************************************** */
+
+package org.matsim.up.acceleration.grid;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FCCLatticeTest {
+
+	@Test
+	public void testIndexOrderMatchesFCCGrid(){
+		FCCGrid grid = new FCCGrid(-75.0, 60.0, -40.0, 85.0, 600.0, 720.0, 10.0);
+		FCCLattice lattice = new FCCLattice(-75.0, 60.0, -40.0, 85.0, 600.0, 720.0, 10.0);
+		GridPoint[] ga = grid.getFcGrid();
+		Assertions.assertEquals(ga.length, lattice.size(), "Wrong number of cells.");
+		for(int i = 0; i < ga.length; i++){
+			Assertions.assertEquals(ga[i].getX(), lattice.getX(i), 0.0, "Wrong x-value for cell " + i);
+			Assertions.assertEquals(ga[i].getY(), lattice.getY(i), 0.0, "Wrong y-value for cell " + i);
+			Assertions.assertEquals(ga[i].getZ(), lattice.getZ(i), 0.0, "Wrong z-value for cell " + i);
+			Assertions.assertEquals(i, lattice.getCellIndex(ga[i].getX(), ga[i].getY(), ga[i].getZ()), "Centroid not in its own cell.");
+		}
+
+		/* Centroids computed on demand, without generating the grid. */
+		FCCGrid implicit = new FCCGrid(-75.0, 60.0, -40.0, 85.0, 600.0, 720.0, 10.0);
+		Assertions.assertEquals(ga.length, implicit.getNGrid(), "Wrong number of cells.");
+		for(int i = 0; i < ga.length; i++){
+			GridPoint point = implicit.getGridPoint(i);
+			Assertions.assertEquals(ga[i].getX(), point.getX(), 0.0, "Wrong implicit x-value for cell " + i);
+			Assertions.assertEquals(ga[i].getY(), point.getY(), 0.0, "Wrong implicit y-value for cell " + i);
+			Assertions.assertEquals(ga[i].getZ(), point.getZ(), 0.0, "Wrong implicit z-value for cell " + i);
+		}
+	}
+
+	@Test
+	public void testGetCellIndexMatchesOcTree(){
+		double minX = -300.0, maxX = 250.0;
+		double minY = -180.0, maxY = 310.0;
+		double minZ = 550.0, maxZ = 1400.0;
+		double scale = 20.0;
+		FCCGrid grid = new FCCGrid(minX, maxX, minY, maxY, minZ, maxZ, scale);
+		FCCLattice lattice = new FCCLattice(minX, maxX, minY, maxY, minZ, maxZ, scale);
+
+		GridPoint[] ga = grid.getFcGrid();
+		OcTree<Integer> ot = new OcTree<Integer>(
+				minX - 4*scale, minY - 4*scale, minZ - 4*scale,
+				maxX + 4*scale, maxY + 4*scale, maxZ + 4*scale);
+		for(int i = 0; i < ga.length; i++){
+			ot.put(ga[i].getX(), ga[i].getY(), ga[i].getZ(), i);
+		}
+
+		Random random = new Random(20240101L);
+		int outside = 0;
+		for(int n = 0; n < 20000; n++){
+			double x = minX + random.nextDouble()*(maxX - minX);
+			double y = minY + random.nextDouble()*(maxY - minY);
+			double z = minZ + random.nextDouble()*(maxZ - minZ);
+			int cell = lattice.getCellIndex(x, y, z);
+			if(cell < 0){
+				outside++;
+			} else{
+				Assertions.assertEquals(ot.get(x, y, z).intValue(), cell, "Lattice and OcTree disagree at (" + x + ";" + y + ";" + z + ")");
+			}
+		}
+		Assertions.assertTrue(outside < 2000, "Too many points fell outside the lattice.");
+	}
+
+	@Test
+	public void testGetCellIndexOutside(){
+		FCCLattice lattice = new FCCLattice(0.0, 100.0, 0.0, 100.0, 0.0, 100.0, 10.0);
+		Assertions.assertEquals(-1, lattice.getCellIndex(-500.0, 50.0, 50.0), "Point should be outside the lattice.");
+		Assertions.assertEquals(-1, lattice.getCellIndex(50.0, 50.0, 1e12), "Point should be outside the lattice.");
+	}
+}
@@ -0,0 +1,60 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class FCCPolyhedronTest {
+
+	@Test
+	public void testCornersOnBoundary(){
+		FCCPolyhedron polyhedron = new FCCPolyhedron(10.0, -20.0, 1000.0, 5.0);
+		Assertions.assertTrue(polyhedron.contains(10.0, -20.0, 1000.0), "Centroid should be inside.");
+		for(int face = 0; face < FCCPolyhedron.NFACES; face++){
+			GridPoint[] points = polyhedron.getFcPolyhedron()[face].getPolyFace();
+			for(int corner = 0; corner < FCCPolyhedron.NCORNERS; corner++){
+				double x = polyhedron.getCorner(face, corner, 0);
+				double y = polyhedron.getCorner(face, corner, 1);
+				double z = polyhedron.getCorner(face, corner, 2);
+				Assertions.assertEquals(points[corner].getX(), x, MatsimTestUtils.EPSILON, "Wrong x-value.");
+				Assertions.assertEquals(points[corner].getY(), y, MatsimTestUtils.EPSILON, "Wrong y-value.");
+				Assertions.assertEquals(points[corner].getZ(), z, MatsimTestUtils.EPSILON, "Wrong z-value.");
+				Assertions.assertTrue(polyhedron.contains(x, y, z), "Corner should be on the boundary.");
+
+				/* Just beyond the corner is outside. */
+				double dx = x - 10.0;
+				double dy = y + 20.0;
+				double dz = z - 1000.0;
+				Assertions.assertFalse(polyhedron.contains(x + 0.01*dx, y + 0.01*dy, z + 0.01*dz), "Should be outside.");
+			}
+		}
+	}
+
+	@Test
+	public void testContainsMatchesLattice(){
+		double scale = 7.0;
+		FCCLattice lattice = new FCCLattice(scale);
+		Random random = new Random(1928L);
+		for(int i = 0; i < 100000; i++){
+			double x = 300*random.nextGaussian();
+			double y = 300*random.nextGaussian();
+			double z = 1000 + 300*random.nextGaussian();
+			long key = lattice.getCellKey(x, y, z);
+			Assertions.assertTrue(FCCPolyhedron.contains(lattice.getKeyX(key), lattice.getKeyY(key), lattice.getKeyZ(key), scale, x, y, z), 
+					"Point " + i + " not in the cell of its key.");
+
+			/* And in none of the neighbouring cells. */
+			long a = FCCLattice.getKeyA(key);
+			long b = FCCLattice.getKeyB(key);
+			long c = FCCLattice.getKeyC(key);
+			for(int face = 0; face < FCCPolyhedron.NFACES; face++){
+				double nx = (a + FCCPolyhedron.getUnitCorner(face, 0, 0) + FCCPolyhedron.getUnitCorner(face, 2, 0))*scale;
+				double ny = (b + FCCPolyhedron.getUnitCorner(face, 0, 1) + FCCPolyhedron.getUnitCorner(face, 2, 1))*scale;
+				double nz = (c + FCCPolyhedron.getUnitCorner(face, 0, 2) + FCCPolyhedron.getUnitCorner(face, 2, 2))*scale;
+				Assertions.assertFalse(FCCPolyhedron.contains(nx, ny, nz, 0.999*scale, x, y, z), "Point " + i + " also in a neighbouring cell.");
+			}
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.up.acceleration.DummyRecords;
+
+public class GridPyramidTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testSameAsSeparateGrids(){
+		String filename = utils.getOutputDirectory() + "records.csv";
+		DummyRecords.write(filename, 3000, 1234L);
+
+		double[] scales = {10.0, 25.0, 60.0};
+		List<DigiGrid_XYZ> levels = new ArrayList<>();
+		for(double scale : scales){
+			levels.add(getGrid(scale, filename));
+		}
+		GridPyramid pyramid = new GridPyramid(levels);
+		pyramid.populate(filename);
+		pyramid.rankGridCells();
+		Assertions.assertEquals(scales.length, pyramid.getNumberOfLevels(), "Wrong number of levels.");
+
+		for(int level = 0; level < scales.length; level++){
+			DigiGrid_XYZ separate = getGrid(scales[level], filename);
+			separate.populateGrid(filename);
+			separate.rankGridCells();
+
+			DigiGrid3D grid = pyramid.getLevel(level);
+			Assertions.assertEquals(separate.cells.size(), grid.cells.size(), "Wrong number of cells at scale " + scales[level]);
+			Assertions.assertEquals(separate.pointsConsidered, grid.pointsConsidered, MatsimTestUtils.EPSILON, "Wrong number of points.");
+			for(int cell = 0; cell < separate.cells.size(); cell++){
+				int other = grid.cells.getCell(separate.cells.getKey(cell));
+				Assertions.assertEquals(separate.getCount(cell), grid.getCount(other), MatsimTestUtils.EPSILON, "Wrong count for cell " + cell);
+				Assertions.assertEquals(separate.getCellRisk(cell), grid.getCellRisk(other), "Wrong risk class for cell " + cell);
+			}
+		}
+
+		try{
+			new GridPyramid(Arrays.asList(new DigiGrid_XYZ(10.0)));
+			Assertions.fail("Should not accept a grid that is not set up.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+	}
+
+	private static DigiGrid_XYZ getGrid(double scale, String filename){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(scale);
+		grid.setInputHasHeader(true);
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid(filename);
+		return grid;
+	}
+}
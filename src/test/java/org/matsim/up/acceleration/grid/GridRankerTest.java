@@ -0,0 +1,70 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GridRankerTest {
+
+	@Test
+	public void testGetRiskClass(){
+		GridRanker ranker = new GridRanker(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		Assertions.assertEquals(0, ranker.getRiskClass(0.1), "Wrong class.");
+		Assertions.assertEquals(0, ranker.getRiskClass(0.5), "Wrong class on threshold.");
+		Assertions.assertEquals(1, ranker.getRiskClass(0.51), "Wrong class.");
+		Assertions.assertEquals(3, ranker.getRiskClass(1.0), "Wrong class.");
+		Assertions.assertEquals(FCCCellStore.UNRATED, ranker.getRiskClass(1.1), "Should be unrated.");
+		Assertions.assertEquals(3, ranker.getRiskClass(Math.nextUp(10.0), 10.0), "A share rounded above one should be clamped.");
+
+		/* Unsorted thresholds: the first one not exceeded still applies. */
+		GridRanker unsorted = new GridRanker(Arrays.asList(0.5, 0.3, 0.9));
+		Assertions.assertEquals(0, unsorted.getRiskClass(0.4), "Wrong class.");
+		Assertions.assertEquals(2, unsorted.getRiskClass(0.6), "Wrong class.");
+	}
+
+	@Test
+	public void testRankTies(){
+		FCCCellStore cells = new FCCCellStore();
+		double[] counts = {4.0, 2.0, 2.0, 1.0, 1.0};
+		for(int i = 0; i < counts.length; i++){
+			cells.setCount(cells.getOrCreateCell(FCCLattice.packKey(2*i, 0, 0)), counts[i]);
+		}
+		/* An empty cell remains unrated. */
+		cells.getOrCreateCell(FCCLattice.packKey(20, 0, 0));
+
+		double[] sorted = new GridRanker(Arrays.asList(0.5, 0.7, 0.85, 1.0)).rank(cells, 10.0);
+		Assertions.assertArrayEquals(new double[]{1.0, 1.0, 2.0, 2.0, 4.0}, sorted, 0.0, "Wrong sorted counts.");
+		Assertions.assertEquals(0, cells.getRiskClass(0), "Wrong class for busiest cell.");
+		/* The first tied cell alone reaches 0.6 (class 1), but both reach 0.8. */
+		Assertions.assertEquals(2, cells.getRiskClass(1), "Tied cells should share a class.");
+		Assertions.assertEquals(2, cells.getRiskClass(2), "Tied cells should share a class.");
+		Assertions.assertEquals(3, cells.getRiskClass(3), "Wrong class.");
+		Assertions.assertEquals(3, cells.getRiskClass(4), "Wrong class.");
+		Assertions.assertEquals(FCCCellStore.UNRATED, cells.getRiskClass(5), "Empty cell should be unrated.");
+	}
+
+	@Test
+	public void testRankDistinctCounts(){
+		/* Without ties the classes follow directly from the cumulative share. */
+		Random random = new Random(1234L);
+		FCCCellStore cells = new FCCCellStore();
+		double total = 0.0;
+		for(int i = 0; i < 1000; i++){
+			double count = i + 1 + random.nextDouble()*0.5;
+			cells.setCount(cells.getOrCreateCell(FCCLattice.packKey(2*i, 0, 0)), count);
+			total += count;
+		}
+		GridRanker ranker = new GridRanker(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		ranker.rank(cells, total);
+
+		double cumulative = 0.0;
+		for(int cell = cells.size() - 1; cell >= 0; cell--){
+			cumulative += cells.getCount(cell);
+			Assertions.assertEquals(ranker.getRiskClass(cumulative, total), cells.getRiskClass(cell), "Wrong class for cell " + cell);
+		}
+		/* Summed in another order, the fractional counts exceed the total. */
+		Assertions.assertEquals(3, cells.getRiskClass(0), "Sparsest cell should be in the last class.");
+	}
+}
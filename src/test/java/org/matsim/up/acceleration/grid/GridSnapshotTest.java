@@ -0,0 +1,72 @@
+package org.matsim.up.acceleration.grid;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class GridSnapshotTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testSizeOfLargeSnapshots(){
+		long header = GridSnapshot.getHeaderSize(12, 4);
+		Assertions.assertEquals(4 + 4 + 4 + 12 + 8 + 8 + 1 + 4 + 32 + 4, header, "Wrong header size.");
+
+		/* Beyond the ~126M cells at which 17 bytes per cell overflow an int. */
+		long occupied = 200000000L;
+		long size = GridSnapshot.getFileSize(header, occupied);
+		Assertions.assertEquals(header + 3400000000L, size, "Wrong file size.");
+		Assertions.assertTrue(size > Integer.MAX_VALUE, "File size should not overflow.");
+
+		size = GridSnapshot.getFileSize(header, Integer.MAX_VALUE);
+		Assertions.assertEquals(header + 17L*Integer.MAX_VALUE, size, "Wrong file size for the largest store.");
+	}
+
+
+	@Test
+	public void testWriteAndRead(){
+		/* More cells than fit in a single write buffer. */
+		GridSnapshot snapshot = new GridSnapshot();
+		snapshot.gridType = "DigiGrid_XYZ";
+		snapshot.scale = 10.0;
+		snapshot.pointsConsidered = 12345.0;
+		snapshot.isRanked = true;
+		snapshot.riskThresholds = Arrays.asList(0.5, 0.75, 0.9, 1.0);
+		snapshot.cells = new FCCCellStore();
+		Random random = new Random(2468L);
+		int n = 20000;
+		for(int i = 0; i < n; i++){
+			int cell = snapshot.cells.getOrCreateCell(FCCLattice.packKey(random.nextInt(1000), random.nextInt(1000), i));
+			snapshot.cells.setCount(cell, 1 + random.nextInt(50));
+			snapshot.cells.setRiskClass(cell, 1 + random.nextInt(4));
+		}
+
+		String filename = utils.getOutputDirectory() + GridSnapshot.FILENAME;
+		snapshot.write(filename);
+		Assertions.assertTrue(GridSnapshot.isSnapshot(filename), "Should be a snapshot.");
+		Assertions.assertEquals(GridSnapshot.getFileSize(GridSnapshot.getHeaderSize(12, 4), n),
+				new File(filename).length(), "Wrong file size.");
+
+		GridSnapshot read = GridSnapshot.read(filename);
+		Assertions.assertEquals(snapshot.gridType, read.gridType, "Wrong grid type.");
+		Assertions.assertEquals(snapshot.scale, read.scale, 0.0, "Wrong scale.");
+		Assertions.assertEquals(snapshot.pointsConsidered, read.pointsConsidered, 0.0, "Wrong points considered.");
+		Assertions.assertTrue(read.isRanked, "Should be ranked.");
+		Assertions.assertEquals(snapshot.riskThresholds, read.riskThresholds, "Wrong risk thresholds.");
+		Assertions.assertEquals(n, read.cells.size(), "Wrong number of cells.");
+		for(int cell = 0; cell < n; cell++){
+			int readCell = read.cells.getCell(snapshot.cells.getKey(cell));
+			Assertions.assertTrue(readCell >= 0, "Cell " + cell + " not read.");
+			Assertions.assertEquals(snapshot.cells.getCount(cell), read.cells.getCount(readCell), 0.0, "Wrong count for cell " + cell);
+			Assertions.assertEquals(snapshot.cells.getRiskClass(cell), read.cells.getRiskClass(readCell), "Wrong risk class for cell " + cell);
+		}
+	}
+
+}
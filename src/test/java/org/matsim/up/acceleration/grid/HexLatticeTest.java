@@ -0,0 +1,62 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class HexLatticeTest {
+
+	@Test
+	public void testGetCellKeyIsClosestCentroid(){
+		HexLattice lattice = new HexLattice(20.0);
+
+		/* Same steps as the hexagonal GeneralGrid. */
+		long origin = HexLattice.packKey(0, 0);
+		Assertions.assertEquals(0.75*20.0, lattice.getKeyX(HexLattice.packKey(1, 0)) - lattice.getKeyX(origin), MatsimTestUtils.EPSILON, "Wrong column step.");
+		Assertions.assertEquals(Math.sqrt(3.0)/2*20.0, lattice.getKeyY(HexLattice.packKey(0, 1)) - lattice.getKeyY(origin), MatsimTestUtils.EPSILON, "Wrong row step.");
+
+		Random random = new Random(3141L);
+		for(int i = 0; i < 100000; i++){
+			double x = 1000*random.nextGaussian();
+			double y = 1000*random.nextGaussian();
+			long key = lattice.getCellKey(x, y);
+			double d = Math.hypot(lattice.getKeyX(key) - x, lattice.getKeyY(key) - y);
+			long q = HexLattice.getKeyQ(key);
+			long r = HexLattice.getKeyR(key);
+			for(long dq = -2; dq <= 2; dq++){
+				for(long dr = -2; dr <= 2; dr++){
+					long other = HexLattice.packKey(q + dq, r + dr);
+					double dOther = Math.hypot(lattice.getKeyX(other) - x, lattice.getKeyY(other) - y);
+					Assertions.assertTrue(d <= dOther + 1e-9, "Point " + i + " is closer to another centroid.");
+				}
+			}
+		}
+		Assertions.assertEquals(HexLattice.NO_KEY, lattice.getCellKey(Double.NaN, 0.0), "NaN should not have a key.");
+	}
+
+	@Test
+	public void testGridGrowsOnDemand(){
+		DigiGrid2D grid = new DigiGrid2D(25.0) {
+			@Override
+			public void writeCellCountsAndRiskClasses(String outputFolder) { }
+		};
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid("dummy.csv");
+		Random random = new Random(2718L);
+		for(int i = 0; i < 5000; i++){
+			grid.incrementValue(200*random.nextGaussian(), 300*random.nextGaussian(), 1.0);
+		}
+		/* Well beyond the old, hard-coded extent. */
+		grid.incrementValue(5000.0, -8000.0, 1.0);
+		grid.incrementValue(5001.0, -8001.0, 1.0);
+		Assertions.assertEquals(2.0, grid.getValue(5000.0, -8000.0), MatsimTestUtils.EPSILON, "Wrong count far out.");
+
+		grid.rankGridCells();
+		Assertions.assertEquals(FCCCellStore.UNRATED, grid.getCellRisk(-9000.0, 9000.0), "Empty hexagon should be unrated.");
+		Assertions.assertEquals(0, grid.getCellRisk(0.0, 0.0), "Busiest hexagon should have the lowest risk.");
+		Assertions.assertTrue(grid.getCellRisk(5000.0, -8000.0) > 0, "Rare hexagon should have a higher risk.");
+	}
+}
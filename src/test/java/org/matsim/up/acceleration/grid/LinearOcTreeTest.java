@@ -0,0 +1,69 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LinearOcTreeTest {
+
+	@Test
+	public void testSameAsOcTree(){
+		Random random = new Random(5678L);
+		int n = 10000;
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] z = new double[n];
+		int[] values = new int[n];
+		List<Integer> valueList = new ArrayList<>(n);
+		for(int i = 0; i < n; i++){
+			if(i > 0 && random.nextDouble() < 0.05){
+				/* Some duplicate points, with new and repeated values. */
+				int other = random.nextInt(i);
+				x[i] = x[other];
+				y[i] = y[other];
+				z[i] = z[other];
+				values[i] = random.nextBoolean() ? values[other] : i;
+			} else{
+				x[i] = random.nextBoolean() ? 100.0*random.nextDouble() : 12.5*random.nextInt(9);
+				y[i] = 100.0*random.nextDouble();
+				z[i] = 100.0*random.nextDouble();
+				values[i] = i;
+			}
+			valueList.add(values[i]);
+		}
+		OcTree<Integer> tree = OcTree.bulkLoad(0.0, 0.0, 0.0, 100.0, 100.0, 100.0, x, y, z, valueList);
+		LinearOcTree linear = LinearOcTree.build(0.0, 0.0, 0.0, 100.0, 100.0, 100.0, x, y, z, values);
+		Assertions.assertEquals(tree.size(), linear.size(), "Wrong number of values.");
+
+		for(int i = 0; i < 10000; i++){
+			double qx = -10.0 + 120.0*random.nextDouble();
+			double qy = -10.0 + 120.0*random.nextDouble();
+			double qz = -10.0 + 120.0*random.nextDouble();
+			Assertions.assertEquals(tree.get(qx, qy, qz).intValue(), linear.get(qx, qy, qz),
+					"Different closest value for (" + qx + ";" + qy + ";" + qz + ")");
+
+			if(i % 50 == 0){
+				double radius = 20.0*random.nextDouble();
+				Collection<Integer> expected = tree.get(qx, qy, qz, radius);
+				int[] sortedExpected = new int[expected.size()];
+				int index = 0;
+				for(Integer value : expected){
+					sortedExpected[index++] = value;
+				}
+				Arrays.sort(sortedExpected);
+				int[] found = linear.get(qx, qy, qz, radius);
+				Arrays.sort(found);
+				Assertions.assertArrayEquals(sortedExpected, found, "Different values in range.");
+			}
+		}
+
+		LinearOcTree empty = LinearOcTree.build(0.0, 0.0, 0.0, 1.0, 1.0, 1.0, new double[0], new double[0], new double[0], new int[0]);
+		Assertions.assertEquals(-1, empty.get(0.5, 0.5, 0.5), "Empty tree should have no closest value.");
+		Assertions.assertEquals(0, empty.get(0.5, 0.5, 0.5, 1.0).length, "Empty tree should have no values in range.");
+	}
+}
@@ -0,0 +1,121 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class OcTreeTest {
+
+	@Test
+	public void testBulkLoad(){
+		Random random = new Random(1234L);
+		int n = 20000;
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] z = new double[n];
+		List<Integer> values = new ArrayList<>(n);
+		for(int i = 0; i < n; i++){
+			if(i > 0 && random.nextDouble() < 0.05){
+				/* Some duplicate points, with new and repeated values. */
+				int other = random.nextInt(i);
+				x[i] = x[other];
+				y[i] = y[other];
+				z[i] = z[other];
+				values.add(random.nextBoolean() ? values.get(other) : i);
+			} else{
+				/* Snap some coordinates to a coarse grid to get points on centre planes. */
+				x[i] = random.nextBoolean() ? 100.0*random.nextDouble() : 12.5*random.nextInt(9);
+				y[i] = 100.0*random.nextDouble();
+				z[i] = random.nextBoolean() ? 100.0*random.nextDouble() : 25.0*random.nextInt(5);
+				values.add(i);
+			}
+		}
+
+		OcTree<Integer> incremental = new OcTree<>(0.0, 0.0, 0.0, 100.0, 100.0, 100.0);
+		int added = 0;
+		for(int i = 0; i < n; i++){
+			if(incremental.put(x[i], y[i], z[i], values.get(i))){
+				added++;
+			}
+		}
+		OcTree<Integer> bulk = OcTree.bulkLoad(0.0, 0.0, 0.0, 100.0, 100.0, 100.0, x, y, z, values);
+		Assertions.assertEquals(added, bulk.size(), "Wrong number of values.");
+
+		for(int i = 0; i < 20000; i++){
+			double qx = -10.0 + 120.0*random.nextDouble();
+			double qy = -10.0 + 120.0*random.nextDouble();
+			double qz = -10.0 + 120.0*random.nextDouble();
+			Assertions.assertEquals(incremental.get(qx, qy, qz), bulk.get(qx, qy, qz),
+					"Different closest value for (" + qx + ";" + qy + ";" + qz + ")");
+		}
+		for(int i = 0; i < n; i += 7){
+			Assertions.assertEquals(incremental.get(x[i], y[i], z[i]), bulk.get(x[i], y[i], z[i]), "Different value for point " + i);
+		}
+
+		try{
+			OcTree.bulkLoad(0.0, 0.0, 0.0, 1.0, 1.0, 1.0, new double[]{2.0}, new double[]{0.0}, new double[]{0.0}, values.subList(0, 1));
+			Assertions.fail("Should not load a point outside the bounds.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+	}
+
+	@Test
+	public void testRangeAndKNearest(){
+		Random random = new Random(4321L);
+		int n = 5000;
+		double[][] points = new double[n][];
+		OcTree<Integer> tree = new OcTree<>(-100.0, -100.0, -100.0, 100.0, 100.0, 100.0);
+		for(int i = 0; i < n; i++){
+			points[i] = new double[]{-100.0 + 200.0*random.nextDouble(), -100.0 + 200.0*random.nextDouble(), -100.0 + 200.0*random.nextDouble()};
+			tree.put(points[i][0], points[i][1], points[i][2], i);
+		}
+
+		for(int q = 0; q < 200; q++){
+			double x = -120.0 + 240.0*random.nextDouble();
+			double y = -120.0 + 240.0*random.nextDouble();
+			double z = -120.0 + 240.0*random.nextDouble();
+			double radius = 30.0*random.nextDouble();
+
+			/* Brute force. */
+			double[] distances = new double[n];
+			List<Integer> inRange = new ArrayList<>();
+			for(int i = 0; i < n; i++){
+				distances[i] = Math.sqrt(Math.pow(points[i][0] - x, 2) + Math.pow(points[i][1] - y, 2) + Math.pow(points[i][2] - z, 2));
+				if(distances[i] <= radius){
+					inRange.add(i);
+				}
+			}
+
+			List<Integer> found = new ArrayList<>(tree.get(x, y, z, radius));
+			Collections.sort(found);
+			Assertions.assertEquals(inRange, found, "Wrong values in range.");
+
+			final int[] visited = {0};
+			int executed = tree.execute(x, y, z, radius, new OcTree.Executor<Integer>() {
+				@Override
+				public void execute(double x, double y, double z, Integer value) {
+					visited[0]++;
+				}
+			});
+			Assertions.assertEquals(inRange.size(), executed, "Wrong number executed.");
+			Assertions.assertEquals(inRange.size(), visited[0], "Wrong number visited.");
+
+			int k = 1 + random.nextInt(20);
+			List<Integer> nearest = tree.getKNearest(x, y, z, k);
+			double[] sorted = distances.clone();
+			Arrays.sort(sorted);
+			Assertions.assertEquals(k, nearest.size(), "Wrong number of neighbours.");
+			for(int i = 0; i < k; i++){
+				Assertions.assertEquals(sorted[i], distances[nearest.get(i)], 0.0, "Wrong neighbour " + i);
+			}
+			Assertions.assertEquals(tree.get(x, y, z), nearest.get(0), "Closest neighbour should match get().");
+		}
+		Assertions.assertEquals(n, tree.getKNearest(0.0, 0.0, 0.0, 2*n).size(), "Should return all values.");
+	}
+}
@@ -0,0 +1,128 @@
+package org.matsim.up.acceleration.grid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class PlyMeshWriterTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testWrite(){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(10.0);
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid("dummy.csv");
+		Random random = new Random(8642L);
+		for(int i = 0; i < 2000; i++){
+			grid.incrementCount(40*random.nextGaussian(), 40*random.nextGaussian(), 1000 + 40*random.nextGaussian(), 1.0);
+		}
+		grid.rankGridCells();
+		PolyhedraMesh mesh = PolyhedraMesh.build(grid, 1);
+
+		Set<String> corners = new HashSet<>();
+		for(int face = 0; face < mesh.getNumberOfFaces(); face++){
+			for(int corner = 0; corner < 4; corner++){
+				corners.add(mesh.getRiskClass(face) + ":" + mesh.getCornerCoordinate(face, corner, 0) + "," 
+						+ mesh.getCornerCoordinate(face, corner, 1) + "," + mesh.getCornerCoordinate(face, corner, 2));
+			}
+		}
+		PlyMeshWriter writer = new PlyMeshWriter(mesh);
+		Assertions.assertEquals(corners.size(), writer.getNumberOfVertices(), "Vertices not deduplicated.");
+		String filename = utils.getOutputDirectory() + "mesh.ply";
+		writer.write(filename);
+
+		try {
+			byte[] bytes = Files.readAllBytes(Paths.get(filename));
+			String text = new String(bytes, "US-ASCII");
+			int start = text.indexOf("end_header\n") + "end_header\n".length();
+			Assertions.assertTrue(text.startsWith("ply\nformat binary_little_endian 1.0\n"), "Wrong header.");
+			Assertions.assertTrue(text.contains("element vertex " + corners.size() + "\n"), "Wrong number of vertices.");
+			Assertions.assertTrue(text.contains("element face " + 2*mesh.getNumberOfFaces() + "\n"), "Wrong number of faces.");
+
+			ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.position(start);
+			float[][] vertices = new float[corners.size()][3];
+			int[] colours = new int[corners.size()];
+			for(int vertex = 0; vertex < vertices.length; vertex++){
+				for(int axis = 0; axis < 3; axis++){
+					vertices[vertex][axis] = buffer.getFloat();
+				}
+				colours[vertex] = (buffer.get() & 0xFF) << 16 | (buffer.get() & 0xFF) << 8 | (buffer.get() & 0xFF);
+			}
+			for(int face = 0; face < mesh.getNumberOfFaces(); face++){
+				int expectedColour = DigiGrid3D.getRgb(DigiGrid3D.getRiskColour(mesh.getRiskClass(face))) & 0xFFFFFF;
+				int[][] triangles = {{0, 1, 2}, {0, 2, 3}};
+				for(int[] triangle : triangles){
+					Assertions.assertEquals(3, buffer.get(), "Not a triangle.");
+					for(int corner : triangle){
+						int vertex = buffer.getInt();
+						Assertions.assertEquals(expectedColour, colours[vertex], "Wrong colour.");
+						for(int axis = 0; axis < 3; axis++){
+							Assertions.assertEquals(mesh.getCorner(face, corner, axis), vertices[vertex][axis], 1e-3, "Wrong vertex.");
+						}
+					}
+				}
+			}
+			Assertions.assertFalse(buffer.hasRemaining(), "Unexpected bytes at the end.");
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot read mesh.");
+		}
+	}
+
+
+	@Test
+	public void testWriteFarCells(){
+		/* Cells near the edge of the lattice, in every direction. */
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(10.0);
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid("dummy.csv");
+		double far = 1.04e7;
+		double[][] records = {{far, far, far}, {-far, -far, -far}, {far, -far, 0.0}, {0.0, 0.0, 0.0}};
+		for(double[] record : records){
+			Assertions.assertTrue(grid.getCellKey(record[0], record[1], record[2]) != FCCLattice.NO_KEY, "Record should be on the lattice.");
+			grid.incrementCount(record[0], record[1], record[2], 1.0);
+		}
+		grid.rankGridCells();
+		PolyhedraMesh mesh = PolyhedraMesh.build(grid, 1);
+		Assertions.assertEquals(4*12, mesh.getNumberOfFaces(), "Wrong number of faces.");
+
+		PlyMeshWriter writer = new PlyMeshWriter(mesh);
+		Assertions.assertEquals(4*14, writer.getNumberOfVertices(), "Wrong number of vertices.");
+		String filename = utils.getOutputDirectory() + "mesh.ply";
+		writer.write(filename);
+
+		try {
+			byte[] bytes = Files.readAllBytes(Paths.get(filename));
+			String text = new String(bytes, "US-ASCII");
+			ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.position(text.indexOf("end_header\n") + "end_header\n".length());
+			double maxX = Double.NEGATIVE_INFINITY;
+			double minZ = Double.POSITIVE_INFINITY;
+			for(int vertex = 0; vertex < writer.getNumberOfVertices(); vertex++){
+				maxX = Math.max(maxX, buffer.getFloat());
+				buffer.getFloat();
+				minZ = Math.min(minZ, buffer.getFloat());
+				buffer.position(buffer.position() + 3);
+			}
+			Assertions.assertEquals(far, maxX, 20.0, "Far corner not written.");
+			Assertions.assertEquals(-far, minZ, 20.0, "Far corner not written.");
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot read mesh.");
+		}
+	}
+}
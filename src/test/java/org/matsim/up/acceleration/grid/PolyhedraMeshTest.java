@@ -0,0 +1,95 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class PolyhedraMeshTest {
+
+	@Test
+	public void testSharedFacesCulled(){
+		DigiGrid_XYZ grid = getGrid();
+		grid.incrementCount(0.0, 0.0, 1000.0, 1.0);
+		grid.incrementCount(10.0, 10.0, 1000.0, 1.0);
+		grid.rankGridCells();
+		int first = grid.getClosestCell(0.0, 0.0, 1000.0);
+		int second = grid.getClosestCell(10.0, 10.0, 1000.0);
+		Assertions.assertNotEquals(first, second, "Records should be in neighbouring cells.");
+
+		grid.cells.setRiskClass(first, 3);
+		grid.cells.setRiskClass(second, 3);
+		PolyhedraMesh mesh = PolyhedraMesh.build(grid, 1);
+		Assertions.assertEquals(22, mesh.getNumberOfFaces(), "Shared face should be culled.");
+		assertClosed(mesh);
+
+		grid.cells.setRiskClass(second, 1);
+		mesh = PolyhedraMesh.build(grid, 1);
+		Assertions.assertEquals(24, mesh.getNumberOfFaces(), "Face between classes should be kept on both sides.");
+		assertClosed(mesh);
+
+		/* Corners are those of FCCPolyhedron, in the same face order. */
+		FCCPolyhedron polyhedron = new FCCPolyhedron(0.0, 0.0, 1000.0, 10.0);
+		for(int face = 0; face < 12; face++){
+			for(GridPoint point : polyhedron.getFcPolyhedron()[face].getPolyFace()){
+				boolean found = false;
+				for(int corner = 0; corner < 4; corner++){
+					found |= Math.abs(mesh.getCorner(face, corner, 0) - point.getX()) < 1e-9
+							&& Math.abs(mesh.getCorner(face, corner, 1) - point.getY()) < 1e-9
+							&& Math.abs(mesh.getCorner(face, corner, 2) - point.getZ()) < 1e-9;
+				}
+				Assertions.assertTrue(found, "Corner of face " + face + " not found.");
+			}
+		}
+	}
+
+	@Test
+	public void testLevelOfDetail(){
+		DigiGrid_XYZ grid = getGrid();
+		Random random = new Random(9753L);
+		for(int i = 0; i < 3000; i++){
+			grid.incrementCount(60*random.nextGaussian(), 60*random.nextGaussian(), 1000 + 60*random.nextGaussian(), 1.0);
+		}
+		grid.rankGridCells();
+
+		PolyhedraMesh fine = PolyhedraMesh.build(grid, 1);
+		PolyhedraMesh coarse = PolyhedraMesh.build(grid, 3);
+		assertClosed(fine);
+		assertClosed(coarse);
+		Assertions.assertTrue(fine.getNumberOfFaces() < 12*grid.getNumberOfOccupiedCells(), "No faces culled.");
+		Assertions.assertTrue(coarse.getNumberOfFaces() < fine.getNumberOfFaces(), "Coarse mesh should have fewer faces.");
+		Assertions.assertEquals(15.0, coarse.getUnit(), MatsimTestUtils.EPSILON, "Wrong unit.");
+	}
+
+	/* Every directed edge of a class's faces is matched by the opposite edge. */
+	private static void assertClosed(PolyhedraMesh mesh){
+		Map<String, Integer> edges = new HashMap<>();
+		for(int face = 0; face < mesh.getNumberOfFaces(); face++){
+			for(int corner = 0; corner < 4; corner++){
+				String from = getCorner(mesh, face, corner);
+				String to = getCorner(mesh, face, (corner + 1) % 4);
+				edges.merge(mesh.getRiskClass(face) + ":" + from + ">" + to, 1, Integer::sum);
+			}
+		}
+		for(Map.Entry<String, Integer> edge : edges.entrySet()){
+			Assertions.assertEquals(1, edge.getValue().intValue(), "Edge used more than once: " + edge.getKey());
+			String[] sa = edge.getKey().split("[:>]");
+			Assertions.assertTrue(edges.containsKey(sa[0] + ":" + sa[2] + ">" + sa[1]), "Surface not closed at " + edge.getKey());
+		}
+	}
+
+	private static String getCorner(PolyhedraMesh mesh, int face, int corner){
+		return mesh.getCornerCoordinate(face, corner, 0) + "," + mesh.getCornerCoordinate(face, corner, 1) + "," + mesh.getCornerCoordinate(face, corner, 2);
+	}
+
+	private static DigiGrid_XYZ getGrid(){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(10.0);
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid("dummy.csv");
+		return grid;
+	}
+}
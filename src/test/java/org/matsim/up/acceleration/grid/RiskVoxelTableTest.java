@@ -0,0 +1,78 @@
+package org.matsim.up.acceleration.grid;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RiskVoxelTableTest {
+
+	@Test
+	public void testSameAsGrid(){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(15.0);
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid("dummy.csv");
+		Random random = new Random(1234L);
+		for(int i = 0; i < 5000; i++){
+			grid.incrementCount(150*random.nextGaussian(), 150*random.nextGaussian(), 1000 + 80*random.nextGaussian(), 1.0);
+		}
+		try{
+			grid.compileRiskTable();
+			Assertions.fail("Should not compile an unranked grid.");
+		} catch(RuntimeException e){
+			/* Correct. */
+		}
+		grid.rankGridCells();
+		RiskVoxelTable table = grid.compileRiskTable();
+
+		int n = 20000;
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double[] z = new double[n];
+		for(int i = 0; i < n; i++){
+			/* Also records in empty cells, and well outside the table. */
+			x[i] = 300*random.nextGaussian();
+			y[i] = 300*random.nextGaussian();
+			z[i] = 1000 + 160*random.nextGaussian();
+		}
+		int[] classes = new int[n];
+		table.getRiskClasses(x, y, z, classes);
+
+		/* The bounding box of the occupied cells, in lattice coordinates. */
+		long[] min = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+		long[] max = {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+		for(int cell = grid.cells.nextOccupiedCell(0); cell >= 0; cell = grid.cells.nextOccupiedCell(cell+1)){
+			long[] abc = getCoordinates(grid.cells.getKey(cell));
+			for(int axis = 0; axis < 3; axis++){
+				min[axis] = Math.min(min[axis], abc[axis]);
+				max[axis] = Math.max(max[axis], abc[axis]);
+			}
+		}
+		int holes = 0;
+		for(int i = 0; i < n; i++){
+			int expected = grid.getCellRisk(grid.getClosestOccupiedCell(x[i], y[i], z[i]));
+			int cell = grid.getClosestCell(x[i], y[i], z[i]);
+			if(cell < 0 || grid.getCount(cell) <= 0.0){
+				long key = grid.getCellKey(x[i], y[i], z[i]);
+				long[] abc = getCoordinates(key);
+				boolean inside = true;
+				for(int axis = 0; axis < 3; axis++){
+					inside &= abc[axis] >= min[axis] && abc[axis] <= max[axis];
+				}
+				if(inside){
+					/* Empty cells in the table take the class of the cell closest to their centroid. */
+					expected = grid.getCellRisk(grid.getClosestOccupiedCell(
+							grid.lattice.getKeyX(key), grid.lattice.getKeyY(key), grid.lattice.getKeyZ(key)));
+					holes++;
+				}
+			}
+			Assertions.assertEquals(expected, classes[i], "Wrong class for record " + i);
+		}
+		Assertions.assertTrue(holes > 0, "Some records should fall in empty cells inside the table.");
+	}
+
+	private static long[] getCoordinates(long key){
+		return new long[]{FCCLattice.getKeyA(key), FCCLattice.getKeyB(key), FCCLattice.getKeyC(key)};
+	}
+}
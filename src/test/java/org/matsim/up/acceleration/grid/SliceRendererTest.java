@@ -0,0 +1,108 @@
+package org.matsim.up.acceleration.grid;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.testcases.MatsimTestUtils;
+
+public class SliceRendererTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testRenderSlices(){
+		DigiGrid_XYZ grid = new DigiGrid_XYZ(25.0);
+		grid.setRiskThresholds(Arrays.asList(0.5, 0.75, 0.9, 1.0));
+		grid.setupGrid("dummy.csv");
+		Random random = new Random(1357L);
+		for(int i = 0; i < 5000; i++){
+			grid.incrementCount(150*random.nextGaussian(), 150*random.nextGaussian(), 1000 + 80*random.nextGaussian(), 1.0);
+		}
+		try{
+			new SliceRenderer(grid, 2.0);
+			Assertions.fail("Should not render an unranked grid.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+		grid.rankGridCells();
+
+		SliceRenderer renderer = new SliceRenderer(grid, -300.0, 300.0, -200.0, 200.0, 2.0);
+		renderer.setDrawBorders(false);
+		Assertions.assertEquals(300, renderer.getWidth(), "Wrong width.");
+		Assertions.assertEquals(200, renderer.getHeight(), "Wrong height.");
+		BufferedImage image = renderer.render(1000.0);
+		int coloured = 0;
+		for(int row = 0; row < renderer.getHeight(); row++){
+			for(int column = 0; column < renderer.getWidth(); column++){
+				int cell = grid.getClosestCell(renderer.getX(column), renderer.getY(row), 1000.0);
+				int rgb = image.getRGB(column, row) & 0xFFFFFF;
+				if(cell < 0 || grid.getCount(cell) <= 0.0){
+					Assertions.assertEquals(0xFFFFFF, rgb, "Empty cell should be white.");
+				} else{
+					Assertions.assertEquals(getRgb(grid.getCellRisk(cell)), rgb, "Wrong colour at (" + column + ";" + row + ")");
+					coloured++;
+				}
+			}
+		}
+		Assertions.assertTrue(coloured > 0, "Slice should cross occupied cells.");
+
+		/* Slices rendered in parallel are the same as those rendered alone. */
+		renderer.setDrawBorders(true);
+		renderer.setNumberOfThreads(4);
+		List<String> files = renderer.renderSlices(900.0, 1100.0, 25.0, utils.getOutputDirectory());
+		Assertions.assertEquals(9, files.size(), "Wrong number of slices.");
+		Assertions.assertTrue(files.get(4).endsWith("slice_1000.png"), "Wrong slice name.");
+		try {
+			BufferedImage read = ImageIO.read(new File(files.get(4)));
+			BufferedImage expected = renderer.render(1000.0);
+			for(int row = 0; row < renderer.getHeight(); row++){
+				for(int column = 0; column < renderer.getWidth(); column++){
+					Assertions.assertEquals(expected.getRGB(column, row), read.getRGB(column, row), "Wrong pixel in written slice.");
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot read slice.");
+		}
+
+		/* Fractional steps are named with decimals, so that no slice is overwritten. */
+		renderer = new SliceRenderer(grid, -20.0, 20.0, -20.0, 20.0, 2.0);
+		String folder = utils.getOutputDirectory() + "fractional/";
+		files = renderer.renderSlices(999.5, 1001.0, 0.25, folder);
+		Assertions.assertEquals(7, files.size(), "Wrong number of slices.");
+		Assertions.assertTrue(files.get(0).endsWith("slice_0999.50.png"), "Wrong slice name.");
+		Assertions.assertTrue(files.get(3).endsWith("slice_1000.25.png"), "Wrong slice name.");
+		Assertions.assertEquals(7, new File(folder).list().length, "Slices overwritten.");
+		Assertions.assertEquals(0, SliceRenderer.getDecimals(900.0, 25.0), "Wrong number of decimals.");
+		Assertions.assertEquals(1, SliceRenderer.getDecimals(1000.0, 0.5), "Wrong number of decimals.");
+		try{
+			renderer.renderSlices(1000.0, 1000.000001, 0.0000001, folder);
+			Assertions.fail("Should not render slices with the same name.");
+		} catch(IllegalArgumentException e){
+			/* Correct. */
+		}
+	}
+
+	private static int getRgb(int riskClass){
+		switch (riskClass) {
+		case 0:
+			return 0x93D653;
+		case 1:
+			return 0xF8D755;
+		case 2:
+			return 0xFAA436;
+		default:
+			return 0xF62B20;
+		}
+	}
+}
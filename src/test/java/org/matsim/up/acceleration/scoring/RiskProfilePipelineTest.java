@@ -0,0 +1,129 @@
+package org.matsim.up.acceleration.scoring;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.up.acceleration.DummyRecords;
+import org.matsim.up.acceleration.scoring.DigiScorer.RISK_GROUP;
+
+public class RiskProfilePipelineTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testRun(){
+		/* A dummy scorer that only looks at the sign of the x and y-values. */
+		DigiScorer scorer = new DigiScorer() {
+			@Override
+			public void buildScoringModel(String filename) { }
+
+			@Override
+			public void rateIndividuals(String filename, String outputFolder) { }
+
+			@Override
+			public RISK_GROUP getRiskGroup(String record) {
+				return RISK_GROUP.NONE;
+			}
+
+			@Override
+			public RISK_GROUP getRiskGroup(double x, double y, double z) {
+				return RISK_GROUP.values()[(x < 0 ? 0 : 2) + (y < 0 ? 0 : 1)];
+			}
+		};
+
+		/* Interleaved records of many vehicles, and the expected profiles. */
+		String filename = utils.getOutputDirectory() + "records.csv";
+		RiskProfiles expected = new RiskProfiles();
+		for(double[] record : DummyRecords.write(filename, 20000, 1234L, 300)){
+			expected.add(String.valueOf((long) record[0]), scorer.getRiskGroup(record[1], record[2], record[3]));
+		}
+
+		RiskProfilePipeline pipeline = new RiskProfilePipeline(scorer, 0, 5, 6, 7);
+		pipeline.setHasHeader(true);
+		pipeline.setNumberOfPartitions(7);
+		pipeline.setNumberOfThreads(3);
+		RiskProfiles profiles = pipeline.run(filename, utils.getOutputDirectory());
+
+		Assertions.assertEquals(expected.getIds(), profiles.getIds(), "Wrong individuals.");
+		for(String id : expected.getIds()){
+			for(RISK_GROUP group : RISK_GROUP.values()){
+				Assertions.assertEquals(expected.getCount(id, group), profiles.getCount(id, group), "Wrong count for " + id + " in " + group);
+			}
+		}
+		Assertions.assertTrue(new File(utils.getOutputDirectory() + RiskProfilePipeline.PROFILES_FILENAME).exists(), "Profiles not written.");
+		assertNoSpillFolders();
+	}
+
+
+	@Test
+	public void testInvalidIds(){
+		Assertions.assertEquals(1234L, RiskProfilePipeline.getId(1234.0), "Wrong id.");
+		Assertions.assertEquals((1L << 53) - 1, RiskProfilePipeline.getId(9007199254740991.0), "Wrong id.");
+		double[] invalid = {12.5, Double.NaN, Double.POSITIVE_INFINITY, 9007199254740993.0, -1e18};
+		for(double id : invalid){
+			try{
+				RiskProfilePipeline.getId(id);
+				Assertions.fail("Should not accept id " + id);
+			} catch(IllegalArgumentException e){
+				/* Expected. */
+			}
+		}
+
+		String filename = utils.getOutputDirectory() + "records.csv";
+		BufferedWriter bw = IOUtils.getBufferedWriter(filename);
+		try{
+			bw.write("1000,1,2,3,4,0.5,0.5,1000.0,60");
+			bw.newLine();
+			bw.write("1000.5,1,2,3,4,0.5,0.5,1000.0,60");
+			bw.newLine();
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot write records.");
+		} finally{
+			try {
+				bw.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+				Assertions.fail("Cannot close records.");
+			}
+		}
+		RiskProfilePipeline pipeline = new RiskProfilePipeline(new DigiScorer() {
+			@Override
+			public void buildScoringModel(String filename) { }
+
+			@Override
+			public void rateIndividuals(String filename, String outputFolder) { }
+
+			@Override
+			public RISK_GROUP getRiskGroup(String record) {
+				return RISK_GROUP.NONE;
+			}
+		}, 0, 5, 6, 7);
+		try{
+			pipeline.run(filename, utils.getOutputDirectory());
+			Assertions.fail("Should not accept a fractional id.");
+		} catch(IllegalArgumentException e){
+			/* Expected. */
+		}
+		assertNoSpillFolders();
+	}
+
+
+	private void assertNoSpillFolders(){
+		String[] spills = new File(utils.getOutputDirectory()).list(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith("spill");
+			}
+		});
+		Assertions.assertEquals(0, spills.length, "Spill files not removed.");
+	}
+}
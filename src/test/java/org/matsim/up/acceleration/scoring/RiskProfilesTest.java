@@ -0,0 +1,91 @@
+package org.matsim.up.acceleration.scoring;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.matsim.core.utils.io.IOUtils;
+import org.matsim.testcases.MatsimTestUtils;
+import org.matsim.up.acceleration.scoring.DigiScorer.RISK_GROUP;
+
+public class RiskProfilesTest {
+
+	@RegisterExtension
+	public MatsimTestUtils utils = new MatsimTestUtils();
+
+	@Test
+	public void testRateRecordsAndMerge(){
+		/* A dummy scorer that only looks at the x-value. */
+		DigiScorer scorer = new DigiScorer() {
+			@Override
+			public void buildScoringModel(String filename) { }
+
+			@Override
+			public void rateIndividuals(String filename, String outputFolder) { }
+
+			@Override
+			public RISK_GROUP getRiskGroup(String record) {
+				return RISK_GROUP.NONE;
+			}
+
+			@Override
+			public RISK_GROUP getRiskGroup(double x, double y, double z) {
+				return RISK_GROUP.values()[(int) x];
+			}
+		};
+
+		RiskProfiles profiles = new RiskProfiles();
+		double[] zeros = new double[5];
+		scorer.rateRecords("b", new double[]{0, 1, 1, 3, 3}, zeros, zeros, profiles);
+		scorer.rateRecords("a", new double[]{2, 2, 2, 2, 2}, zeros, zeros, profiles);
+		Assertions.assertEquals(2, profiles.getCount("b", RISK_GROUP.LOW), "Wrong count.");
+		Assertions.assertEquals(0, profiles.getCount("b", RISK_GROUP.MEDIUM), "Wrong count.");
+		Assertions.assertEquals(0, profiles.getCount("c", RISK_GROUP.HIGH), "Unknown individual should have no records.");
+
+		RiskProfiles other = new RiskProfiles();
+		other.add("b", RISK_GROUP.HIGH);
+		other.add("c", RISK_GROUP.NONE);
+		profiles.merge(other);
+		Assertions.assertEquals(3, profiles.getCount("b", RISK_GROUP.HIGH), "Wrong merged count.");
+		Assertions.assertEquals(3, profiles.getIds().size(), "Wrong number of individuals.");
+
+		String filename = utils.getOutputDirectory() + "profiles.csv";
+		profiles.write(filename);
+		try(BufferedReader br = IOUtils.getBufferedReader(filename)){
+			Assertions.assertEquals("id,none,low,medium,high", br.readLine(), "Wrong header.");
+			Assertions.assertEquals("a,0,0,5,0", br.readLine(), "Wrong profile.");
+			Assertions.assertEquals("b,1,2,0,3", br.readLine(), "Wrong profile.");
+			Assertions.assertEquals("c,1,0,0,0", br.readLine(), "Wrong profile.");
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assertions.fail("Cannot read profiles.");
+		}
+	}
+
+
+	@Test
+	public void testScorerWithoutParsedValues(){
+		/* A scorer written before the batch methods, that only rates raw records. */
+		DigiScorer scorer = new DigiScorer() {
+			@Override
+			public void buildScoringModel(String filename) { }
+
+			@Override
+			public void rateIndividuals(String filename, String outputFolder) { }
+
+			@Override
+			public RISK_GROUP getRiskGroup(String record) {
+				return RISK_GROUP.NONE;
+			}
+		};
+		Assertions.assertEquals(RISK_GROUP.NONE, scorer.getRiskGroup("1,2,3"), "Wrong risk group.");
+		try{
+			scorer.rateRecords("a", new double[1], new double[1], new double[1], new RiskProfiles());
+			Assertions.fail("Should not rate parsed values.");
+		} catch(UnsupportedOperationException e){
+			/* Expected. */
+		}
+	}
+}